@@ -0,0 +1,95 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark for Scheduler boundary bursts.  Many repeating jobs (like
+ * detector polling jobs) are due at the same interval boundary.  For each
+ * burst, the time from the boundary until the last job starts is measured,
+ * which gives the dispatch throughput.
+ *
+ * @author Douglas Lau
+ */
+public class BurstBench {
+
+	/** Number of repeating jobs */
+	static private final int N_JOBS = 20000;
+
+	/** Job interval (seconds) */
+	static private final int INTERVAL = 2;
+
+	/** Number of bursts to measure (after one warmup burst) */
+	static private final int N_BURSTS = 10;
+
+	/** Exception handler */
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Maximum lateness of a job in current burst (ns) */
+	static private final AtomicLong max_late = new AtomicLong();
+
+	/** Count of jobs performed in current burst */
+	static private final AtomicLong n_performed = new AtomicLong();
+
+	/** Record lateness of a job */
+	static private void record(long late) {
+		n_performed.incrementAndGet();
+		long m = max_late.get();
+		while (late > m && !max_late.compareAndSet(m, late))
+			m = max_late.get();
+	}
+
+	/** Run the bursts with one number of threads */
+	static private void runBursts(int n_threads) throws Exception {
+		Scheduler sched = new Scheduler("burst", HANDLER, n_threads);
+		for (int i = 0; i < N_JOBS; i++) {
+			sched.addJob(new Job(Calendar.SECOND, INTERVAL) {
+				public void perform() {
+					record(-TimeSteward.nanosUntil(
+						getDeadline()));
+				}
+			});
+		}
+		long[] us = new long[N_BURSTS];
+		for (int b = 0; b <= N_BURSTS; b++) {
+			max_late.set(0);
+			n_performed.set(0);
+			Thread.sleep(INTERVAL * 1000);
+			if (b > 0)
+				us[b - 1] = max_late.get() / 1000;
+		}
+		sched.dispose();
+		Arrays.sort(us);
+		long med = Math.max(us[N_BURSTS / 2], 1);
+		System.out.printf("threads %d  jobs %6d  burst (us): " +
+			"min %6d  median %6d  max %6d  jobs/s %9d%n", n_threads,
+			N_JOBS, us[0], med, us[N_BURSTS - 1],
+			N_JOBS * 1000000L / med);
+	}
+
+	/** Run the benchmark */
+	static public void main(String[] args) throws Exception {
+		runBursts(1);
+		runBursts(4);
+	}
+}
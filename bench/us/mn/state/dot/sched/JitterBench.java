@@ -0,0 +1,101 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Random;
+
+/**
+ * Benchmark for Scheduler timer jitter.  One-shot jobs are scheduled with
+ * short random delays, one at a time, and the lateness of each job (from its
+ * deadline until it starts) is recorded.  Each wait mode is tested: the
+ * default Object.wait, precision waits with parking, and precision waits with
+ * spinning before the deadline.
+ *
+ * @author Douglas Lau
+ */
+public class JitterBench {
+
+	/** Number of jobs per mode (first 10% are warmup) */
+	static private final int N_JOBS = 4000;
+
+	/** Maximum job delay (ms) */
+	static private final int MAX_DELAY = 4;
+
+	/** Spin time for spin mode (ns) */
+	static private final long SPIN_NS = 200000;
+
+	/** Exception handler */
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Run one mode.
+	 * @return Histogram of lateness (us). */
+	static private Histogram runMode(boolean precise, long spin)
+		throws Exception
+	{
+		Scheduler sched = new Scheduler("jitter", HANDLER);
+		sched.setPrecisionWait(precise, spin);
+		final Histogram hist = new Histogram();
+		Random r = new Random(1);
+		for (int i = 0; i < N_JOBS; i++) {
+			final boolean warm = i < N_JOBS / 10;
+			Job job = new Job(1 + r.nextInt(MAX_DELAY)) {
+				public void perform() {
+					long ns = -TimeSteward.nanosUntil(
+						getDeadline());
+					if (!warm)
+						hist.record(ns / 1000);
+				}
+			};
+			sched.addJob(job).getFuture().get();
+		}
+		sched.dispose();
+		return hist;
+	}
+
+	/** Print the results for one mode */
+	static private void print(String mode, Histogram h) {
+		System.out.printf("%-6s lateness (us): p50 %6d  p99 %6d  " +
+			"p999 %6d  max %6d%n", mode, h.getPercentile(50),
+			h.getPercentile(99), h.getPercentile(99.9),
+			h.getMax());
+	}
+
+	/** Run the benchmark.  With a "load" argument, busy threads are
+	 * started (one per processor) to compete with the scheduler. */
+	static public void main(String[] args) throws Exception {
+		if (args.length > 0 && "load".equals(args[0])) {
+			int n = Runtime.getRuntime().availableProcessors();
+			for (int i = 0; i < n; i++) {
+				Thread t = new Thread() {
+					public void run() {
+						while (true) {
+							// busy
+						}
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+		print("wait", runMode(false, 0));
+		print("park", runMode(true, 0));
+		print("spin", runMode(true, SPIN_NS));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Random;
+
+/**
+ * Benchmark comparing job queue implementations.  For each queue size, jobs
+ * due at random times within one hour are added, half of them are removed,
+ * and the rest are drained in order.
+ *
+ * @author Douglas Lau
+ */
+public class JobQueueBench {
+
+	/** Queue sizes to test */
+	static private final int[] SIZES = { 1000, 100000, 1000000 };
+
+	/** Number of warmup rounds */
+	static private final int WARMUP = 3;
+
+	/** Create jobs due at random times */
+	static private Job[] createJobs(int n) {
+		Random r = new Random(n);
+		Job[] jobs = new Job[n];
+		for (int i = 0; i < n; i++) {
+			jobs[i] = new Job(r.nextInt(3600 * 1000)) {
+				public void perform() { }
+			};
+		}
+		return jobs;
+	}
+
+	/** Create a job queue */
+	static private JobQueue createQueue(boolean wheel) {
+		return wheel ? new TimingWheel() : new TreeJobQueue();
+	}
+
+	/** Run one round of the benchmark.
+	 * @return Array of ns per add, remove and poll. */
+	static private double[] runRound(boolean wheel, Job[] jobs) {
+		JobQueue q = createQueue(wheel);
+		long start = Long.MAX_VALUE;
+		for (Job j: jobs)
+			start = Math.min(start, j.getDeadline());
+		q.poll(start);
+		long t0 = System.nanoTime();
+		for (Job j: jobs)
+			q.add(j);
+		long t1 = System.nanoTime();
+		for (int i = 0; i < jobs.length; i += 2)
+			q.remove(jobs[i]);
+		long t2 = System.nanoTime();
+		int n_poll = 0;
+		long last = Long.MIN_VALUE;
+		for (Job j = q.poll(Long.MAX_VALUE); j != null;
+		     j = q.poll(Long.MAX_VALUE))
+		{
+			if (j.getDeadline() < last)
+				throw new IllegalStateException("out of order");
+			last = j.getDeadline();
+			n_poll++;
+		}
+		long t3 = System.nanoTime();
+		int n_rem = (jobs.length + 1) / 2;
+		return new double[] {
+			(t1 - t0) / (double) jobs.length,
+			(t2 - t1) / (double) n_rem,
+			(t3 - t2) / (double) Math.max(1, n_poll),
+		};
+	}
+
+	/** Run the benchmark for one queue size */
+	static private void runSize(int n) {
+		Job[] jobs = createJobs(n);
+		for (boolean wheel: new boolean[] { false, true }) {
+			double[] ns = null;
+			int rounds = WARMUP + Math.max(1, 1000000 / n);
+			for (int i = 0; i < rounds; i++)
+				ns = runRound(wheel, jobs);
+			System.out.printf("%-13s %8d  add %7.1f  remove %7.1f" +
+				"  poll %7.1f ns/op%n", wheel ? "TimingWheel" :
+				"TreeJobQueue", n, ns[0], ns[1], ns[2]);
+		}
+	}
+
+	/** Run the benchmark */
+	static public void main(String[] args) {
+		for (int n: SIZES)
+			runSize(n);
+	}
+}
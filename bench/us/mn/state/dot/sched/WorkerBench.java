@@ -0,0 +1,117 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmark for Worker throughput with many producer threads.  Each
+ * producer adds an equal share of trivial work items, and the time until
+ * all of them have been performed is measured.
+ *
+ * @author Douglas Lau
+ */
+public class WorkerBench {
+
+	/** Numbers of producer threads to test */
+	static private final int[] PRODUCERS = { 1, 8, 64 };
+
+	/** Total number of work items per round */
+	static private final int N_WORK = 1 << 20;
+
+	/** Number of rounds per test (first is warmup) */
+	static private final int ROUNDS = 4;
+
+	/** Exception handler */
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Create a work queue */
+	static private WorkQueue createQueue(boolean mpsc) {
+		return mpsc ? new MpscWorkQueue() : new LockedWorkQueue();
+	}
+
+	/** Run one round.
+	 * @return Throughput in work items per second. */
+	static private double runRound(boolean mpsc, int n_prod)
+		throws InterruptedException
+	{
+		final Worker worker = new Worker("bench", HANDLER,
+			createQueue(mpsc));
+		final CountDownLatch done = new CountDownLatch(1);
+		final int per_prod = N_WORK / n_prod;
+		final int total = per_prod * n_prod;
+		final int[] performed = new int[1];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] producers = new Thread[n_prod];
+		for (int p = 0; p < n_prod; p++) {
+			producers[p] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < per_prod; i++) {
+						worker.addWork(new Work() {
+							protected void perform() {
+								performed[0]++;
+							}
+						});
+					}
+				}
+			};
+			producers[p].start();
+		}
+		long t0 = System.nanoTime();
+		start.countDown();
+		for (Thread p: producers)
+			p.join();
+		// Last work must be created after the others (for ordering)
+		worker.addWork(new Work() {
+			protected void perform() {
+				done.countDown();
+			}
+		});
+		done.await();
+		long t1 = System.nanoTime();
+		worker.dispose();
+		if (performed[0] != total)
+			throw new IllegalStateException("lost work");
+		return total * 1e9 / (t1 - t0);
+	}
+
+	/** Run the benchmark */
+	static public void main(String[] args) throws Exception {
+		for (int n_prod: PRODUCERS) {
+			for (boolean mpsc: new boolean[] { false, true }) {
+				double best = 0;
+				for (int r = 0; r < ROUNDS; r++) {
+					double t = runRound(mpsc, n_prod);
+					if (r > 0)
+						best = Math.max(best, t);
+				}
+				System.out.printf("%-15s %3d producers %12.0f " +
+					"work/s%n", mpsc ? "MpscWorkQueue" :
+					"LockedWorkQueue", n_prod, best);
+			}
+		}
+	}
+}
@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class DebugLogBenchmark_jmhType extends DebugLogBenchmark_jmhType_B3 {
+}
+
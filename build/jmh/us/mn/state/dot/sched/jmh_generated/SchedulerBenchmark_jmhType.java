@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class SchedulerBenchmark_jmhType extends SchedulerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class TimeSourceBenchmark_jmhType extends TimeSourceBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class TimeStewardBenchmark_jmhType extends TimeStewardBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class WorkerBenchmark_Producer_jmhType extends WorkerBenchmark_Producer_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package us.mn.state.dot.sched.jmh_generated;
+public class WorkerBenchmark_jmhType extends WorkerBenchmark_jmhType_B3 {
+}
+
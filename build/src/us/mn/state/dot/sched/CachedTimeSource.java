@@ -0,0 +1,112 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * A cached Time Source provides a coarse system time, which is updated by a
+ * ticker thread at a fixed resolution.  Reading the time is a single volatile
+ * field read, instead of a call to the OS clock.
+ *
+ * Accuracy: the cached time is never ahead of System.currentTimeMillis(),
+ * and normally lags it by less than the resolution.  The same is true of the
+ * cached monotonic time and System.nanoTime().  If the ticker thread is
+ * not scheduled on time (such as during a GC pause), the lag can be longer.
+ * Jobs scheduled with this time source may start up to one resolution late,
+ * so it is not useful with precision waits (Scheduler.setPrecisionWait).
+ *
+ * @author Douglas Lau
+ */
+public class CachedTimeSource extends SystemTimeSource {
+
+	/** Ticker thread group */
+	static private final ThreadGroup GROUP = new ThreadGroup("CLOCK");
+
+	/** Resolution of cached time (ms) */
+	private final long resolution;
+
+	/** Cached current time */
+	private volatile long now = System.currentTimeMillis();
+
+	/** Cached monotonic time */
+	private volatile long nanos = System.nanoTime();
+
+	/** Ticker thread (null when stopped) */
+	private Thread ticker;
+
+	/** Create a cached time source.
+	 * @param res Resolution of cached time (ms). */
+	public CachedTimeSource(long res) {
+		if (res < 1)
+			throw new IllegalArgumentException("resolution");
+		resolution = res;
+		start();
+	}
+
+	/** Start the ticker thread, if it is stopped.  The cached time is
+	 * updated immediately. */
+	public synchronized void start() {
+		if (ticker != null)
+			return;
+		nanos = System.nanoTime();
+		now = System.currentTimeMillis();
+		ticker = new Thread(GROUP, "ticker") {
+			public void run() {
+				tick();
+			}
+		};
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/** Update the cached time until interrupted */
+	private void tick() {
+		try {
+			while (true) {
+				nanos = System.nanoTime();
+				now = System.currentTimeMillis();
+				Thread.sleep(resolution);
+			}
+		}
+		catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	/** Get the resolution (ms) */
+	public long getResolution() {
+		return resolution;
+	}
+
+	/** Get the current (cached) time */
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+
+	/** Get the current (cached) monotonic time */
+	@Override
+	public long nanoTime() {
+		return nanos;
+	}
+
+	/** Stop the ticker thread.  The time will no longer advance until it
+	 * is started again. */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.interrupt();
+			ticker = null;
+		}
+	}
+}
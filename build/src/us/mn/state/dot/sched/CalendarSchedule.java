@@ -0,0 +1,242 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A calendar schedule computes the times a repeating job is performed, for
+ * one interval / offset pair.  Schedules are shared by all jobs with the
+ * same interval and offset.
+ *
+ * Intervals of hours or less are a fixed number of milliseconds, aligned to
+ * the local time of day.  The local UTC offset comes from the cached zone
+ * rules (see DateTimeCache), so each time is computed with simple arithmetic
+ * and no allocation.
+ *
+ * Intervals of days, weeks, months or years are aligned to local dates, and
+ * the offset is added to the local start of the period.  These are computed
+ * from java.time zone rules, so they are correct across DST changes and for
+ * any month length.  The current period is cached, so it is only computed
+ * once per period (or when the time zone changes).
+ *
+ * @author Douglas Lau
+ */
+final class CalendarSchedule implements Schedule {
+
+	/** Unit for intervals with a fixed number of milliseconds */
+	static private final int FIXED = 0;
+
+	/** Unit for intervals of local days */
+	static private final int DAYS = 1;
+
+	/** Unit for intervals of local months */
+	static private final int MONTHS = 2;
+
+	/** Local date of the epoch */
+	static private final LocalDate EPOCH = LocalDate.of(1970, 1, 1);
+
+	/** Cache of all schedules */
+	static private final ConcurrentHashMap<String, CalendarSchedule> CACHE =
+		new ConcurrentHashMap<String, CalendarSchedule>();
+
+	/** Get the calendar schedule for an interval and offset.
+	 * @param field java.util.Calendar field for interval.
+	 * @param value Amount of specified field.
+	 * @param interval Interval in milliseconds.
+	 * @param offset Offset from interval boundary, in milliseconds.
+	 * @return Shared calendar schedule. */
+	static CalendarSchedule lookup(int field, int value, long interval,
+		long offset)
+	{
+		int unit = FIXED;
+		long amount = interval;
+		switch (field) {
+		case Calendar.DATE:
+		case Calendar.DAY_OF_YEAR:
+		case Calendar.DAY_OF_WEEK:
+			unit = DAYS;
+			amount = value;
+			break;
+		case Calendar.WEEK_OF_YEAR:
+		case Calendar.WEEK_OF_MONTH:
+		case Calendar.DAY_OF_WEEK_IN_MONTH:
+			unit = DAYS;
+			amount = 7L * value;
+			break;
+		case Calendar.MONTH:
+			unit = MONTHS;
+			amount = value;
+			break;
+		case Calendar.YEAR:
+			unit = MONTHS;
+			amount = 12L * value;
+			break;
+		}
+		return lookup(unit, amount, offset);
+	}
+
+	/** Get the calendar schedule for a unit, amount and offset */
+	static private CalendarSchedule lookup(int unit, long amount,
+		long offset)
+	{
+		String key = unit + ":" + amount + ":" + offset;
+		CalendarSchedule cs = CACHE.get(key);
+		if (null == cs) {
+			cs = new CalendarSchedule(unit, amount, offset);
+			CalendarSchedule c = CACHE.putIfAbsent(key, cs);
+			if (c != null)
+				cs = c;
+		}
+		return cs;
+	}
+
+	/** Period between two consecutive times */
+	static private final class Period {
+		private final ZoneId zone;
+		private final long start;
+		private final long end;
+		private Period(ZoneId z, long s, long e) {
+			zone = z;
+			start = s;
+			end = e;
+		}
+	}
+
+	/** Interval unit (FIXED, DAYS or MONTHS) */
+	private final int unit;
+
+	/** Interval amount (milliseconds, days or months) */
+	private final long amount;
+
+	/** Offset from interval boundary (ms) */
+	private final long offset;
+
+	/** Current period (for DAYS or MONTHS) */
+	private volatile Period period;
+
+	/** Create a new calendar schedule */
+	private CalendarSchedule(int u, long a, long o) {
+		assert a > 0;
+		unit = u;
+		amount = a;
+		offset = o;
+	}
+
+	/** Check if the interval is a fixed number of milliseconds */
+	boolean isFixed() {
+		return FIXED == unit;
+	}
+
+	/** Get the offset from interval boundary (ms) */
+	long getOffset() {
+		return offset;
+	}
+
+	/** Get the schedule with the same interval and a different offset.
+	 * @param o Offset from interval boundary, in milliseconds.
+	 * @return Shared calendar schedule. */
+	CalendarSchedule withOffset(long o) {
+		return (o != offset) ? lookup(unit, amount, o) : this;
+	}
+
+	/** Compute the most recently past scheduled time.
+	 * @param t Current time.
+	 * @return Latest scheduled time at or before t. */
+	long computePastTime(long t) {
+		if (FIXED == unit) {
+			long off = offset - TimeSteward.localOffset(t);
+			return Math.floorDiv(t - off, amount) * amount + off;
+		} else
+			return lookupPeriod(t).start;
+	}
+
+	/** Compute the next scheduled time.
+	 * @param t Current time.
+	 * @return Earliest scheduled time after t. */
+	@Override
+	public long computeNextTime(long t) {
+		if (FIXED == unit)
+			return computePastTime(t) + amount;
+		else
+			return lookupPeriod(t).end;
+	}
+
+	/** Look up the period containing a time */
+	private Period lookupPeriod(long t) {
+		ZoneId z = TimeSteward.localZone();
+		Period p = period;
+		if (p != null && p.zone == z && t >= p.start && t < p.end)
+			return p;
+		p = createPeriod(z, t);
+		// Only cache the period containing the current time
+		long now = TimeSteward.currentTimeMillis();
+		if (now >= p.start && now < p.end)
+			period = p;
+		return p;
+	}
+
+	/** Create the period containing a time */
+	private Period createPeriod(ZoneId z, long t) {
+		LocalDate ld = Instant.ofEpochMilli(t).atZone(z).toLocalDate();
+		long n = Math.floorDiv(periodNumber(ld), amount);
+		long s = scheduledTime(z, n);
+		if (s > t) {
+			long e = s;
+			s = scheduledTime(z, n - 1);
+			return new Period(z, s, e);
+		} else
+			return new Period(z, s, scheduledTime(z, n + 1));
+	}
+
+	/** Get the number of days or months since the epoch for a date */
+	private long periodNumber(LocalDate ld) {
+		if (DAYS == unit)
+			return ld.toEpochDay();
+		else {
+			return (ld.getYear() - 1970) * 12L +
+			       (ld.getMonthValue() - 1);
+		}
+	}
+
+	/** Get the local start of a period */
+	private LocalDateTime periodStart(long n) {
+		LocalDate ld = (DAYS == unit)
+		             ? LocalDate.ofEpochDay(n * amount)
+		             : EPOCH.plusMonths(n * amount);
+		return ld.atStartOfDay();
+	}
+
+	/** Get the scheduled time for a period.  The offset is added to the
+	 * local start of the period (limited to the end of the period).  A
+	 * local time in a DST gap is moved forward by the length of the gap.
+	 * @param z Time zone.
+	 * @param n Period number.
+	 * @return Scheduled time (ms). */
+	private long scheduledTime(ZoneId z, long n) {
+		LocalDateTime ldt = periodStart(n).plusNanos(offset * 1000000);
+		LocalDateTime end = periodStart(n + 1).minusNanos(1000000);
+		if (ldt.isAfter(end))
+			ldt = end;
+		return ZonedDateTime.ofLocal(ldt, z, null).toInstant()
+			.toEpochMilli();
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2002-2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DebugLog is a class for logging debugging information.  Logging can be
+ * enabled or disabled by creating or deleting the log file.  Just use "touch
+ * {filename}" to start logging.
+ *
+ * With asynchronous logging enabled, messages are appended to a bounded ring
+ * buffer and written by a background thread.  The log file is only checked
+ * periodically, so it may take a second to start or stop logging.
+ *
+ * @author Douglas Lau
+ */
+public final class DebugLog {
+
+	/** Path to store log files */
+	static private File PATH = new File(".");
+
+	/** Initial message when creating log file */
+	static private String MESSAGE = "Created DebugLog";
+
+	/** Default exception handler */
+	static private ExceptionHandler HANDLER = new ExceptionHandler() {
+		public boolean handle(Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Capacity of asynchronous ring buffer */
+	static private final int ASYNC_CAPACITY = 65536;
+
+	/** Asynchronous log writer (null for synchronous logging) */
+	static private volatile DebugLogWriter WRITER = null;
+
+	/** Enable asynchronous logging for all debug logs */
+	static public synchronized void enableAsync() {
+		if (null == WRITER)
+			WRITER = new DebugLogWriter(ASYNC_CAPACITY);
+	}
+
+	/** Disable asynchronous logging.  All queued messages are written and
+	 * flushed before returning. */
+	static public void disableAsync() {
+		DebugLogWriter w;
+		synchronized (DebugLog.class) {
+			w = WRITER;
+			WRITER = null;
+		}
+		if (w != null)
+			w.close();
+	}
+
+	/** Initialize the debug log mechanism.
+	 * @param p File path to store log files.
+	 * @param m Initial message when creating log file.
+	 * @param h Default exception handler. */
+	static public void init(File p, String m, ExceptionHandler h) {
+		if (p.isDirectory())
+			PATH = p;
+		MESSAGE = m;
+		HANDLER = h;
+	}
+
+	/** Initialize the debug log mechanism.
+	 * @param p File path to store log files.
+	 * @param m Initial message when creating log file. */
+	static public void init(File p, String m) {
+		init(p, m, HANDLER);
+	}
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Handle an exception */
+	private void handleException(Exception e) {
+		if (handler != null)
+			handler.handle(e);
+		else
+			HANDLER.handle(e);
+	}
+
+	/** Create a new debug log */
+	public DebugLog(String fn) {
+		this(fn, null);
+	}
+
+	/** Create a new debug log */
+	public DebugLog(String fn, ExceptionHandler h) {
+		name = fn;
+		handler = h;
+		log(MESSAGE);
+	}
+
+	/** Name of log file */
+	private final String name;
+
+	/** Get the logging file */
+	public File getFile() {
+		return new File(PATH, name);
+	}
+
+	/** Debug log buffered writer */
+	private BufferedWriter bw = null;
+
+	/** Flag indicating log file is writable (for async logging) */
+	private volatile boolean open = false;
+
+	/** Async writer this log is registered with */
+	private volatile DebugLogWriter registered = null;
+
+	/** Count of messages dropped because the ring buffer was full */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Count of dropped messages already reported */
+	private long dropped_reported = 0;
+
+	/** Get the async log writer, registering this log if necessary */
+	private DebugLogWriter asyncWriter() {
+		DebugLogWriter w = WRITER;
+		if (w != null && w != registered) {
+			registered = w;
+			w.register(this);
+		}
+		return w;
+	}
+
+	/** Check if we can write to the log file */
+	private synchronized boolean canWrite(File file) throws IOException {
+		boolean w = file.canWrite();
+		if (bw != null && (!w || file.length() == 0)) {
+			bw.close();
+			bw = null;
+		}
+		return w;
+	}
+
+	/** Check if the debug log is open for writing */
+	public boolean isOpen() {
+		if (asyncWriter() != null)
+			return open;
+		try {
+			return canWrite(getFile());
+		}
+		catch (IOException e) {
+			handleException(e);
+			return false;
+		}
+	}
+
+	/** Log a message in the debug log file */
+	public void log(String m) {
+		DebugLogWriter w = asyncWriter();
+		if (w != null) {
+			long now = TimeSteward.currentTimeMillis();
+			if (open && !w.append(this, now, m))
+				dropped.incrementAndGet();
+		} else
+			logSync(m);
+	}
+
+	/** Log a message synchronously in the debug log file */
+	private synchronized void logSync(String m) {
+		try {
+			File file = getFile();
+			if (canWrite(file)) {
+				write(file, TimeSteward.currentTimeMillis(), m);
+				bw.flush();
+			}
+		}
+		catch (IOException e) {
+			handleException(e);
+		}
+	}
+
+	/** Write a message in the debug log file (without flushing) */
+	private void write(File file, long time, String m)
+		throws IOException
+	{
+		if (bw == null) {
+			bw = new BufferedWriter(new FileWriter(file, true));
+			log(bw, time, "DebugLog: " + name);
+		}
+		log(bw, time, m);
+	}
+
+	/** Write a log message to a buffered writer */
+	private void log(BufferedWriter bw, long time, String m)
+		throws IOException
+	{
+		bw.write(TimeSteward.dateTimeString(time, true));
+		bw.write(" ");
+		bw.write(m);
+		bw.newLine();
+	}
+
+	/** Write a message from the async writer thread */
+	synchronized void writeAsync(long time, String m) {
+		if (open) {
+			try {
+				write(getFile(), time, m);
+			}
+			catch (IOException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	/** Flush the log file from the async writer thread */
+	synchronized void flushAsync() {
+		try {
+			if (bw != null)
+				bw.flush();
+		}
+		catch (IOException e) {
+			handleException(e);
+		}
+	}
+
+	/** Check if the log file is writable (for async logging), and report
+	 * any dropped messages */
+	synchronized void checkOpen() {
+		try {
+			File file = getFile();
+			open = canWrite(file);
+			long d = dropped.get();
+			if (open && d > dropped_reported) {
+				write(file, TimeSteward.currentTimeMillis(),
+					"DROPPED " + (d - dropped_reported) +
+					" messages");
+				bw.flush();
+				dropped_reported = d;
+			}
+		}
+		catch (IOException e) {
+			handleException(e);
+			open = false;
+		}
+	}
+
+	/** Get the count of messages dropped because the async ring buffer
+	 * was full */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
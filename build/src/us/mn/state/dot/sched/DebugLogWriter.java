@@ -0,0 +1,147 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer for asynchronous debug logs.  Callers append entries to a
+ * bounded ring buffer without blocking; if it is full, the entry is dropped
+ * and counted.  The writer thread formats entries, writes them in batches and
+ * flushes each log file once per batch.  It also checks periodically whether
+ * each log file has been created or deleted.  When closed, it writes and
+ * flushes all queued entries before the thread exits.
+ *
+ * @author Douglas Lau
+ */
+final class DebugLogWriter {
+
+	/** Interval to check if log files exist (ms) */
+	static private final long CHECK_MS = 1000;
+
+	/** Maximum number of entries to write per batch */
+	static private final int BATCH_SIZE = 256;
+
+	/** Log entry */
+	static private final class Entry {
+		private final DebugLog log;
+		private final long time;
+		private final String msg;
+		private Entry(DebugLog l, long t, String m) {
+			log = l;
+			time = t;
+			msg = m;
+		}
+	}
+
+	/** Ring buffer of log entries */
+	private final ArrayBlockingQueue<Entry> entries;
+
+	/** Set of registered logs */
+	private final Set<DebugLog> logs = Collections.synchronizedSet(
+		Collections.newSetFromMap(new WeakHashMap<DebugLog, Boolean>()));
+
+	/** Writer thread */
+	private final Thread thread;
+
+	/** Create a debug log writer.
+	 * @param capacity Capacity of ring buffer. */
+	DebugLogWriter(int capacity) {
+		entries = new ArrayBlockingQueue<Entry>(capacity);
+		thread = new Thread("DebugLogWriter") {
+			public void run() {
+				writeEntries();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Register a debug log */
+	void register(DebugLog log) {
+		logs.add(log);
+		log.checkOpen();
+	}
+
+	/** Append a log entry without blocking.
+	 * @return false if the ring buffer was full. */
+	boolean append(DebugLog log, long time, String msg) {
+		return entries.offer(new Entry(log, time, msg));
+	}
+
+	/** Close the writer.  Queued entries are written and flushed before
+	 * returning; entries appended after that are not written. */
+	void close() {
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Write entries until interrupted */
+	private void writeEntries() {
+		ArrayList<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+		HashSet<DebugLog> written = new HashSet<DebugLog>();
+		long checked = System.nanoTime();
+		boolean closed = false;
+		while (!closed) {
+			try {
+				Entry e = entries.poll(CHECK_MS,
+					TimeUnit.MILLISECONDS);
+				if (e != null) {
+					batch.add(e);
+					entries.drainTo(batch, BATCH_SIZE - 1);
+				}
+			}
+			catch (InterruptedException e) {
+				// Write all remaining entries before exiting
+				entries.drainTo(batch);
+				closed = true;
+			}
+			for (Entry e: batch) {
+				e.log.writeAsync(e.time, e.msg);
+				written.add(e.log);
+			}
+			for (DebugLog log: written)
+				log.flushAsync();
+			batch.clear();
+			written.clear();
+			long now = System.nanoTime();
+			if (now - checked >= CHECK_MS * 1000000) {
+				checkLogs();
+				checked = now;
+			}
+		}
+	}
+
+	/** Check if all registered log files exist */
+	private void checkLogs() {
+		DebugLog[] all;
+		synchronized (logs) {
+			all = logs.toArray(new DebugLog[0]);
+		}
+		for (DebugLog log: all)
+			log.checkOpen();
+	}
+}
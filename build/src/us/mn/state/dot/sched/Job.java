@@ -0,0 +1,604 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2000-2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job for the scheduler to perform.  When the scheduler is ready, the perform
+ * method is called.  The perform method must be implemented by any subclasses.
+ *
+ * Each job has a next time, which is aligned to the wall clock (and time
+ * zone), and a deadline on the monotonic clock (see
+ * TimeSteward.monotonicMillis).  Schedulers only use the deadline, so changes
+ * to the wall clock do not affect when a job is performed, until the job is
+ * re-anchored.
+ *
+ * When a repeating job misses scheduled times, its misfire policy determines
+ * whether they are skipped or performed.  Overruns and missed times are
+ * counted for each job.
+ *
+ * @author Douglas Lau
+ */
+abstract public class Job implements Comparable<Job> {
+
+	/** Calculate a time interval from a Calendar field and value.
+	 * @param field java.util.Calendar field constant.
+	 * @param value Amount of specified field.
+	 * @return Number of milliseconds in interval. */
+	static private long calculateInterval(int field, int value) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(0);
+		c.add(field, value);
+		return c.getTimeInMillis();
+	}
+
+	/** Maximum number of times to scan when counting missed times */
+	static private final int MAX_SCAN = 1000;
+
+	/** Default maximum burst for CATCH_UP policy */
+	static private final int DEFAULT_BURST = 3;
+
+	/** Job state: not scheduled */
+	static private final int IDLE = 0;
+
+	/** Job state: waiting to be performed */
+	static private final int SCHEDULED = 1;
+
+	/** Job state: being performed */
+	static private final int RUNNING = 2;
+
+	/** Job state: cancelled (may still be in a job queue) */
+	static private final int CANCELLED = 3;
+
+	/** Updater for job state */
+	static private final AtomicIntegerFieldUpdater<Job> STATE =
+		AtomicIntegerFieldUpdater.newUpdater(Job.class, "state");
+
+	/** Next available job identifier */
+	static private final AtomicLong next_id = new AtomicLong();
+
+	/** Unique job identifier */
+	private final long id = next_id.getAndIncrement();
+
+	/** Time interval to perform this job, in milliseconds.  For
+	 * non-repeating (or cron) jobs, this must be 0. */
+	private final long interval;
+
+	/** Time offset from whole interval boundary, in milliseconds. */
+	private final long offset;
+
+	/** Schedule for computing times (null for non-repeating jobs).  This
+	 * only changes when the job is staggered by a scheduler. */
+	private Schedule schedule;
+
+	/** Next (wall clock) time this job must be performed */
+	private long next_time;
+
+	/** Monotonic deadline for next time job must be performed */
+	private long deadline;
+
+	/** Policy for missed times */
+	private MisfirePolicy misfire = MisfirePolicy.SKIP;
+
+	/** Maximum number of runs in a CATCH_UP burst */
+	private int max_burst = DEFAULT_BURST;
+
+	/** Number of consecutive CATCH_UP runs */
+	private int burst;
+
+	/** Execution time of last run (ms) */
+	private long last_run;
+
+	/** Smoothed execution time (ms) */
+	private long avg_run;
+
+	/** Count of runs which ended after the next scheduled time */
+	private volatile long overruns;
+
+	/** Count of scheduled times which were not performed */
+	private volatile long missed;
+
+	/** Current job state */
+	private volatile int state = IDLE;
+
+	/** Future for the current scheduling of the job */
+	private volatile CompletableFuture<Job> future;
+
+	/** Count of cancelled jobs in the queue of the scheduler */
+	private volatile AtomicInteger n_cancelled;
+
+	/** Timing wheel slot number */
+	int wheel_slot = TimingWheel.NONE;
+
+	/** Previous job in timing wheel slot */
+	Job wheel_prev;
+
+	/** Next job in timing wheel slot */
+	Job wheel_next;
+
+	/**
+	 * Create a new scheduler job.
+	 * @param iField java.util.Calendar field for time interval
+	 * @param i Time interval to schedule the job
+	 * @param oField java.util.Calendar field for interval offset
+	 * @param o Time interval offset to schedule the job
+	 */
+	public Job(int iField, int i, int oField, int o) {
+		assert i >= 0;
+		assert o >= 0;
+		interval = calculateInterval(iField, i);
+		offset = calculateInterval(oField, o);
+		assert offset < interval;
+		schedule = (interval > 0)
+		         ? CalendarSchedule.lookup(iField, i, interval, offset)
+		         : null;
+		computeNextTime();
+	}
+
+	/**
+	 * Create a new scheduler job.
+	 * @param iField java.util.Calendar field for time interval
+	 * @param i Time interval to schedule the job
+	 * @param start_now If true, don't wait before starting.
+	 */
+	public Job(int iField, int i, boolean start_now) {
+		this(iField, i, Calendar.SECOND, 0);
+		if (start_now) {
+			next_time = TimeSteward.currentTimeMillis();
+			deadline = TimeSteward.monotonicMillis();
+		}
+	}
+
+	/**
+	 * Create a new scheduler job.
+	 * @param iField java.util.Calendar field for time interval
+	 * @param i Time interval to schedule the job
+	 */
+	public Job(int iField, int i) {
+		this(iField, i, Calendar.SECOND, 0);
+	}
+
+	/**
+	 * Create a new scheduler job with a cron schedule.
+	 * @param cron Cron schedule for performing the job
+	 */
+	public Job(CronSchedule cron) {
+		interval = 0;
+		offset = 0;
+		schedule = cron;
+		computeNextTime();
+	}
+
+	/** Create a one-shot scheduler job */
+	public Job(int milliseconds) {
+		interval = 0;
+		offset = 0;
+		schedule = null;
+		next_time = TimeSteward.currentTimeMillis() + milliseconds;
+		deadline = TimeSteward.monotonicMillis() + milliseconds;
+	}
+
+	/** Create a one-shot job to schedule immediately */
+	public Job() {
+		this(0);
+	}
+
+	/** Check if this is a repeating job */
+	public boolean isRepeating() {
+		return schedule != null;
+	}
+
+	/** Set the policy for missed times.  This must be set before the job
+	 * is added to a scheduler. */
+	public void setMisfirePolicy(MisfirePolicy p) {
+		misfire = p;
+	}
+
+	/** Get the policy for missed times */
+	public MisfirePolicy getMisfirePolicy() {
+		return misfire;
+	}
+
+	/** Set the maximum number of missed times to perform in a burst with
+	 * the CATCH_UP policy.  Any more are skipped.  This must be set before
+	 * the job is added to a scheduler. */
+	public void setMaxBurst(int b) {
+		if (b < 1)
+			throw new IllegalArgumentException("max_burst");
+		max_burst = b;
+	}
+
+	/** Get the count of runs which ended after the next scheduled time */
+	public long getOverrunCount() {
+		return overruns;
+	}
+
+	/** Get the count of scheduled times which were not performed */
+	public long getMissedCount() {
+		return missed;
+	}
+
+	/** Get the time interval (ms), or 0 for non-repeating or cron jobs */
+	long getInterval() {
+		return interval;
+	}
+
+	/** Get the smoothed execution time (ms) */
+	long getAverageRun() {
+		return avg_run;
+	}
+
+	/** Check if the job can be staggered.  Only jobs with a fixed interval
+	 * (hours or less) and no offset can be staggered. */
+	boolean canStagger() {
+		return offset == 0 && interval > 0 &&
+		      ((CalendarSchedule) schedule).isFixed();
+	}
+
+	/** Get the stagger offset for the job (ms) */
+	long getStagger() {
+		return ((CalendarSchedule) schedule).getOffset();
+	}
+
+	/** Set the stagger offset for the job.  The job stays aligned to its
+	 * interval, but is performed at the stagger offset from each interval
+	 * boundary.  This takes effect the next time is computed.
+	 * @param s Stagger offset (ms). */
+	void setStagger(long s) {
+		schedule = ((CalendarSchedule) schedule).withOffset(s);
+	}
+
+	/** Mark the job as scheduled.
+	 * @param c Count of cancelled jobs in the scheduler queue, which is
+	 *          incremented if the job is cancelled while queued.
+	 * @return Future which is completed when the job is finished. */
+	CompletableFuture<Job> schedule(AtomicInteger c) {
+		CompletableFuture<Job> f = new CompletableFuture<Job>();
+		future = f;
+		n_cancelled = c;
+		state = SCHEDULED;
+		return f;
+	}
+
+	/** Start performing the job.
+	 * @return false if the job was cancelled. */
+	boolean start() {
+		return STATE.compareAndSet(this, SCHEDULED, RUNNING);
+	}
+
+	/** Reschedule a repeating job after it was performed.
+	 * @return false if the job was cancelled or added again. */
+	boolean reschedule() {
+		return STATE.compareAndSet(this, RUNNING, SCHEDULED);
+	}
+
+	/** Finish performing the job, and complete its future.  A one-shot
+	 * job completes with itself (or the exception it threw).  A repeating
+	 * job only finishes when it is cancelled.
+	 * @param ex Exception thrown while performing the job, or null. */
+	void finish(Exception ex) {
+		boolean cancelled = !STATE.compareAndSet(this, RUNNING, IDLE);
+		// Don't complete if the job was added again while running
+		if (cancelled && state != CANCELLED)
+			return;
+		CompletableFuture<Job> f = future;
+		if (ex != null)
+			f.completeExceptionally(ex);
+		else if (isRepeating())
+			f.cancel(false);
+		else
+			f.complete(this);
+		notifyComplete();
+	}
+
+	/** Skip a job which was cancelled after it was started, but before
+	 * it was performed (while waiting in a batch). */
+	void skip() {
+		CompletableFuture<Job> f = future;
+		f.cancel(false);
+		notifyComplete();
+	}
+
+	/** Notify threads waiting for completion */
+	private synchronized void notifyComplete() {
+		notifyAll();
+	}
+
+	/** Wait for the job to be completed.  For repeating jobs, this waits
+	 * until the job has been cancelled.
+	 * @param ms Time to wait before giving up.
+	 * @throws TimeoutException if timeout expires before completion. */
+	public synchronized final void waitForCompletion(long ms)
+		throws TimeoutException
+	{
+		long end = TimeSteward.monotonicMillis() + ms;
+		CompletableFuture<Job> f = future;
+		while (f != null && !f.isDone()) {
+			long w = end - TimeSteward.monotonicMillis();
+			if (w <= 0)
+				throw new TimeoutException();
+			try {
+				TimeSteward.wait(this, w);
+			}
+			catch (InterruptedException e) {
+				// keep waiting
+			}
+		}
+	}
+
+	/** Cancel the job.  If the job is waiting to be performed, it will be
+	 * skipped when it is due.  If it is being performed, it will not be
+	 * repeated.
+	 * @return true if the job was scheduled or running. */
+	public boolean cancel() {
+		while (true) {
+			int s = state;
+			if (s != SCHEDULED && s != RUNNING)
+				return false;
+			if (STATE.compareAndSet(this, s, CANCELLED)) {
+				// Running jobs are completed by finish
+				if (s == SCHEDULED)
+					cancelQueued();
+				return true;
+			}
+		}
+	}
+
+	/** Complete a job which was cancelled while waiting in a queue */
+	private void cancelQueued() {
+		n_cancelled.incrementAndGet();
+		future.cancel(false);
+		notifyComplete();
+	}
+
+	/** Check if the job is waiting in a scheduler queue.
+	 * @param c Count of cancelled jobs for the queue. */
+	boolean isWaiting(AtomicInteger c) {
+		return state == SCHEDULED && n_cancelled == c;
+	}
+
+	/** Shed a job which is waiting in a scheduler queue, because the
+	 * queue is full.  This is the same as cancelling it, but a running
+	 * job is never shed.
+	 * @param c Count of cancelled jobs for the queue.
+	 * @return true if the job was shed. */
+	boolean shed(AtomicInteger c) {
+		if (n_cancelled == c &&
+		    STATE.compareAndSet(this, SCHEDULED, CANCELLED))
+		{
+			cancelQueued();
+			return true;
+		} else
+			return false;
+	}
+
+	/** Check if the job has been cancelled */
+	public boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	/** Get the delay time before performing the job, in milliseconds */
+	public long delay() {
+		return deadline - TimeSteward.monotonicMillis();
+	}
+
+	/** Get the next (wall clock) time this job must be performed */
+	long getNextTime() {
+		return next_time;
+	}
+
+	/** Get the monotonic deadline for performing the job */
+	long getDeadline() {
+		return deadline;
+	}
+
+	/** Compute the next time this job will be scheduled.  Warning: the
+	 * sort order for the Comparable interface will change. */
+	void computeNextTime() {
+		long now = TimeSteward.currentTimeMillis();
+		long mono = TimeSteward.monotonicMillis();
+		next_time = (schedule != null)
+		          ? schedule.computeNextTime(now)
+		          : now;
+		deadline = mono + (next_time - now);
+	}
+
+	/** Check for times missed before a repeating job was added.  The job
+	 * is late if the time after its next time has also passed.  Warning:
+	 * the sort order for the Comparable interface may change. */
+	void checkMisfire() {
+		if (!isRepeating())
+			return;
+		long now = TimeSteward.currentTimeMillis();
+		// CATCH_UP performs next_time first, then the rest in bursts
+		if (misfire != MisfirePolicy.CATCH_UP &&
+		    schedule.computeNextTime(next_time) <= now)
+		{
+			// next_time itself is also missed
+			missed++;
+			misfire(next_time, now, TimeSteward.monotonicMillis());
+		}
+	}
+
+	/** Advance a repeating job to its next time after it was performed,
+	 * applying the misfire policy if it overran.  Warning: the sort order
+	 * for the Comparable interface will change.
+	 * @param now Current wall clock time.
+	 * @param mono Current monotonic time. */
+	void advance(long now, long mono) {
+		long run = last_run;
+		avg_run += (run - avg_run) / 4;
+		long prev = next_time;
+		long next = schedule.computeNextTime(prev);
+		if (next > now) {
+			burst = 0;
+			if (MisfirePolicy.STRETCH == misfire)
+				next = stretch(prev, now);
+			setNextTime(next, now, mono);
+		} else {
+			// Overrun if the next time passed while running
+			if (next > now - run)
+				overruns++;
+			misfire(prev, now, mono);
+		}
+	}
+
+	/** Handle missed times according to the misfire policy.
+	 * @param prev Previous scheduled time.
+	 * @param now Current wall clock time.
+	 * @param mono Current monotonic time. */
+	private void misfire(long prev, long now, long mono) {
+		switch (misfire) {
+		case FIRE_ONCE:
+			// One run now stands for all missed times
+			missed += countTimes(prev, now + 1) - 1;
+			setNextTime(now, now, mono);
+			return;
+		case CATCH_UP:
+			if (burst < max_burst) {
+				burst++;
+				long next = schedule.computeNextTime(prev);
+				setNextTime(next, now, mono);
+				return;
+			}
+			burst = 0;
+			break;
+		case STRETCH:
+			setNextTime(stretch(prev, now), now, mono);
+			return;
+		default:
+			break;
+		}
+		long next = schedule.computeNextTime(now);
+		missed += countTimes(prev, next);
+		setNextTime(next, now, mono);
+	}
+
+	/** Compute a stretched next time, which leaves idle time of at least
+	 * one third of the smoothed execution time.  Skipped times are counted
+	 * as missed.
+	 * @param prev Previous scheduled time.
+	 * @param now Current wall clock time.
+	 * @return Next scheduled time. */
+	private long stretch(long prev, long now) {
+		long next = schedule.computeNextTime(now + avg_run / 3);
+		missed += countTimes(prev, next);
+		return next;
+	}
+
+	/** Count scheduled times between two times (exclusive).  After
+	 * scanning many times, the rest are estimated from the interval. */
+	private long countTimes(long t0, long t1) {
+		long n = 0;
+		long t = schedule.computeNextTime(t0);
+		while (t < t1) {
+			n++;
+			if (n >= MAX_SCAN && interval > 0)
+				return n + (t1 - 1 - t) / interval;
+			t = schedule.computeNextTime(t);
+		}
+		return n;
+	}
+
+	/** Set the next time and deadline */
+	private void setNextTime(long next, long now, long mono) {
+		next_time = next;
+		deadline = mono + (next - now);
+	}
+
+	/** Re-anchor the job after the wall clock has jumped.  A repeating
+	 * job which is not yet due is aligned to the new wall clock time.  Other
+	 * jobs keep their deadline.  Warning: the sort order for the
+	 * Comparable interface may change.
+	 * @param mono Current monotonic time. */
+	void reanchor(long mono) {
+		if (isRepeating() && deadline > mono)
+			computeNextTime();
+		else {
+			long now = TimeSteward.currentTimeMillis();
+			next_time = now + (deadline - mono);
+		}
+	}
+
+	/** Perform the task for this job */
+	void performTask() throws Exception {
+		long start = TimeSteward.monotonicMillis();
+		try {
+			perform();
+		}
+		finally {
+			complete();
+			last_run = TimeSteward.monotonicMillis() - start;
+		}
+	}
+
+	/** Do this upon completion of the job */
+	public void complete() { }
+
+	/** Actual "job" to be performed */
+	abstract public void perform() throws Exception;
+
+	/** Compare this job with another one */
+	@Override
+	public int compareTo(Job other) {
+		long c = deadline - other.deadline;
+		if (c == 0)
+			c = interval - other.interval;
+		if (c == 0)
+			c = offset - other.offset;
+		if (c == 0)
+			c = id - other.id;
+		if (c < 0)
+			return -1;
+		if (c > 0)
+			return 1;
+		return 0;
+	}
+
+	/** Get the serialization key of the job.  When a scheduler performs
+	 * jobs with an executor, jobs with equal keys are never performed
+	 * concurrently.
+	 * @return Key object, or null for no serialization. */
+	public Object getKey() {
+		return null;
+	}
+
+	/** Get the timeout for performing the job.  If the job runs longer
+	 * than this, it is considered hung by the scheduler watchdog (see
+	 * Scheduler.setWatchdog).
+	 * @return Timeout (ms), or 0 for the scheduler default. */
+	public long getTimeout() {
+		return 0;
+	}
+
+	/** Check if the job must be performed on a scheduler thread.  Such
+	 * jobs are never fanned out to another executor (see
+	 * Scheduler.setFanOut).
+	 * @return true if the job requires a scheduler thread. */
+	public boolean requiresSchedulerThread() {
+		return false;
+	}
+
+	/** Get the name of the job */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+}
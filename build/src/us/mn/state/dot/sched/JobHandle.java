@@ -0,0 +1,63 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle for a job which has been added to a scheduler.  The handle can be
+ * used to cancel the job, or to chain further processing when it finishes.
+ *
+ * @author Douglas Lau
+ */
+public final class JobHandle {
+
+	/** Scheduled job */
+	private final Job job;
+
+	/** Future for job completion */
+	private final CompletableFuture<Job> future;
+
+	/** Create a new job handle */
+	JobHandle(Job j, CompletableFuture<Job> f) {
+		job = j;
+		future = f;
+	}
+
+	/** Get the scheduled job */
+	public Job getJob() {
+		return job;
+	}
+
+	/** Get a future which is completed as soon as the job finishes.  For
+	 * a one-shot job, it is completed with the job (or the exception it
+	 * threw) after it is performed.  For a repeating job, it is cancelled
+	 * after the job is cancelled.  Dependent stages which are not "async"
+	 * run on the scheduler thread. */
+	public CompletableFuture<Job> getFuture() {
+		return future;
+	}
+
+	/** Cancel the job.  This is O(1) and does not block.
+	 * @return true if the job was scheduled or running. */
+	public boolean cancel() {
+		return job.cancel();
+	}
+
+	/** Check if the job has been cancelled */
+	public boolean isCancelled() {
+		return job.isCancelled();
+	}
+}
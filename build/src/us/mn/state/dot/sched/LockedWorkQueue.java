@@ -0,0 +1,59 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.PriorityQueue;
+
+/**
+ * Work queue protected by its monitor.  Work is ordered by its Comparable
+ * implementation, and drained one at a time.
+ *
+ * @author Douglas Lau
+ */
+public final class LockedWorkQueue implements WorkQueue {
+
+	/** Set of work to do */
+	private final PriorityQueue<Work> todo = new PriorityQueue<Work>();
+
+	/** Add work to the queue */
+	@Override
+	public synchronized void add(Work w) {
+		todo.add(w);
+		notify();
+	}
+
+	/** Wait for work, then remove it from the queue */
+	@Override
+	public synchronized int drain(Work[] batch)
+		throws InterruptedException
+	{
+		while (todo.isEmpty())
+			wait();
+		batch[0] = todo.poll();
+		return 1;
+	}
+
+	/** Remove the oldest work from the queue */
+	@Override
+	public synchronized Work poll() {
+		return todo.poll();
+	}
+
+	/** Get the count of work in the queue */
+	@Override
+	public synchronized int size() {
+		return todo.size();
+	}
+}
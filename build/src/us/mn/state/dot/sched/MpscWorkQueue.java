@@ -0,0 +1,128 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free multi-producer, single-consumer work queue.  Producers append
+ * nodes to a linked list by swapping the tail, and only wake the worker
+ * thread if it is parked.  The worker drains work in batches.  Work is
+ * performed in the order it was added (FIFO).
+ *
+ * Removing work (drain or poll) is done while holding the queue lock, which
+ * is only contended when producers poll the oldest work to drop it.
+ *
+ * @author Douglas Lau
+ */
+public final class MpscWorkQueue implements WorkQueue {
+
+	/** Linked list node */
+	static private final class Node {
+		private Work work;
+		private volatile Node next;
+		private Node(Work w) {
+			work = w;
+		}
+	}
+
+	/** Head node (guarded by lock) -- its work has already been taken */
+	private volatile Node head = new Node(null);
+
+	/** Tail node */
+	private final AtomicReference<Node> tail =
+		new AtomicReference<Node>(head);
+
+	/** Count of work in the queue */
+	private final AtomicInteger count = new AtomicInteger();
+
+	/** Consumer thread */
+	private volatile Thread consumer;
+
+	/** Flag indicating the consumer is parked (or about to park) */
+	private volatile boolean parked = false;
+
+	/** Add work to the queue */
+	@Override
+	public void add(Work w) {
+		Node n = new Node(w);
+		count.incrementAndGet();
+		tail.getAndSet(n).next = n;
+		if (parked) {
+			Thread c = consumer;
+			if (c != null)
+				LockSupport.unpark(c);
+		}
+	}
+
+	/** Wait for work, then drain a batch from the queue */
+	@Override
+	public int drain(Work[] batch) throws InterruptedException {
+		if (consumer == null)
+			consumer = Thread.currentThread();
+		while (true) {
+			while (head.next == null) {
+				parked = true;
+				if (head.next == null)
+					LockSupport.park(this);
+				parked = false;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+			// Work may have been polled before taking the lock
+			int n = take(batch);
+			if (n > 0)
+				return n;
+		}
+	}
+
+	/** Take a batch of work from the head of the queue */
+	private synchronized int take(Work[] batch) {
+		int n = 0;
+		Node h = head;
+		Node next = h.next;
+		while (next != null && n < batch.length) {
+			batch[n] = next.work;
+			next.work = null;
+			h = next;
+			next = next.next;
+			n++;
+		}
+		head = h;
+		count.addAndGet(-n);
+		return n;
+	}
+
+	/** Remove the oldest work from the queue */
+	@Override
+	public synchronized Work poll() {
+		Node next = head.next;
+		if (null == next)
+			return null;
+		Work w = next.work;
+		next.work = null;
+		head = next;
+		count.decrementAndGet();
+		return w;
+	}
+
+	/** Get the count of work in the queue */
+	@Override
+	public int size() {
+		return count.get();
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * Policies for adding a task (work or job) when a queue is at capacity.
+ *
+ * @author Douglas Lau
+ */
+public enum OverflowPolicy {
+	BLOCK,		/* block producer until there is room (or timeout) */
+	REJECT,		/* throw RejectedExecutionException to producer */
+	DROP_OLDEST,	/* add new task, and drop the oldest queued task */
+	DROP_NEWEST;	/* drop the new task */
+}
@@ -0,0 +1,1203 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2000-2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Scheduler for performing jobs in a dedicated thread.  A scheduler can also
+ * be created with a pool of threads, which all perform jobs from the same
+ * time-ordered queue.  A job is never performed on more than one thread at a
+ * time, since it is only put back on the queue after it has been performed.
+ *
+ * Removing a job only marks it as cancelled, which is O(1) and lock-free.
+ * Cancelled jobs are skipped (and dropped) when they come due, or purged when
+ * they are more than half of the queue.  They are not counted in the size of
+ * the queue.
+ *
+ * Jobs which are due (up to a limit) are taken from the queue in one critical
+ * section, so bursts of jobs due at the same time (such as at interval
+ * boundaries) do not take the lock for each one.  Each scheduler thread takes
+ * a batch which is its share of the due jobs, leaving the rest for idle
+ * threads.  One-shot jobs are finished as soon as they have been performed,
+ * but repeating jobs are put back on the queue together after the batch, in
+ * one critical section.
+ *
+ * With fan-out enabled, the jobs in each batch are performed in parallel by
+ * a fan-out executor (such as a ForkJoinPool), and the scheduler thread waits
+ * for all of them before taking another batch.  Jobs which require the
+ * scheduler thread are still performed on it, serially.
+ *
+ * With stagger enabled, repeating jobs with the same interval (and no offset)
+ * are spread out within the interval, instead of all being performed at each
+ * interval boundary (see Stagger).
+ *
+ * A watchdog can be enabled to detect hung jobs.  When a job runs longer than
+ * its timeout, the stack of its thread is reported to the exception handler,
+ * and the thread is interrupted.  If the job is still running after a grace
+ * time, its thread is abandoned, and the rest of its batch is put back on the
+ * queue for a fresh thread to perform.  Only jobs performed on scheduler
+ * threads are watched (not with an executor or fan-out).
+ *
+ * If an executor is set, the scheduler threads only handle timing, and each
+ * job is performed by the executor (such as a ThreadPerTaskExecutor).
+ *
+ * Jobs are performed at their monotonic deadlines, so a wall clock change
+ * does not cause a burst of jobs or a stall.  When a change is detected, all
+ * queued jobs are re-anchored to the new wall clock time in one pass.
+ *
+ * By default, the thread waiting for the next job uses Object.wait, which
+ * can wake up a millisecond or two late.  Precision waits park the thread
+ * with nanosecond timeouts instead, optionally spinning just before the
+ * deadline.
+ *
+ * The job queue is unbounded by default, but a capacity can be set, with an
+ * overflow policy for adding jobs when it is full.  With the DROP_OLDEST
+ * policy, the one-shot job which was added first is dropped when a new job is
+ * added (repeating jobs are never dropped).  With the BLOCK policy, jobs added
+ * by a scheduler thread are rejected instead of blocking, since the thread
+ * could never be unblocked.
+ *
+ * Repeating jobs which miss scheduled times (by running too long, or being
+ * added late) are handled by their misfire policy (see MisfirePolicy).
+ *
+ * @author Douglas Lau
+ */
+public final class Scheduler {
+
+	/** Maximum number of due jobs to take at once */
+	static private final int BATCH_SIZE = 64;
+
+	/** Minimum number of cancelled jobs to purge from the queue */
+	static private final int PURGE_MIN = 64;
+
+	/** Maximum time between watchdog checks (ms) */
+	static private final long WATCH_MS = 1000;
+
+	/** Change in wall clock offset to detect a jump (ms) */
+	static private final long JUMP_MS = 1000;
+
+	/** Maximum time to wait before checking for a wall clock jump (ms) */
+	static private final long CHECK_MS = 1000;
+
+	/** Scheduler thread group */
+	static private final ThreadGroup GROUP = new ThreadGroup("SCHED");
+
+	/** Default exception handler */
+	static private ExceptionHandler HANDLER = new ExceptionHandler() {
+		public boolean handle(Exception e) {
+			System.err.println("Scheduler: " +
+				Thread.currentThread().getName());
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Scheduler currently performing a job on this thread */
+	static private final ThreadLocal<Scheduler> CURRENT =
+		new ThreadLocal<Scheduler>();
+
+	/** Set the default exception handler */
+	static public void setHandler(ExceptionHandler h) {
+		HANDLER = h;
+	}
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Handle an exception */
+	private void handleException(Exception e) {
+		if (handler != null)
+			handler.handle(e);
+		else
+			HANDLER.handle(e);
+	}
+
+	/** Name of scheduler */
+	private final String name;
+
+	/** Threads for running jobs */
+	private final Dispatcher[] threads;
+
+	/** Scheduler thread, which dispatches and performs jobs */
+	private final class Dispatcher extends Thread {
+
+		/** Current batch of jobs */
+		private Job[] batch;
+
+		/** Index of job being performed in batch */
+		private int index;
+
+		/** Number of jobs in batch */
+		private int n_jobs;
+
+		/** Job being performed (null if none) */
+		private Job job;
+
+		/** Repeating jobs performed in current batch, to requeue */
+		private final Job[] repeat = new Job[BATCH_SIZE];
+
+		/** Number of repeating jobs to requeue */
+		private int n_repeat;
+
+		/** Monotonic time job was started */
+		private long started;
+
+		/** Count of jobs started */
+		private long runs;
+
+		/** Flag indicating job was interrupted by watchdog */
+		private boolean interrupted;
+
+		/** Flag indicating thread was abandoned by watchdog */
+		private volatile boolean abandoned;
+
+		/** Create a dispatcher */
+		private Dispatcher(String name) {
+			super(GROUP, name);
+			setDaemon(true);
+		}
+
+		/** Get the scheduler of the dispatcher */
+		private Scheduler getScheduler() {
+			return Scheduler.this;
+		}
+
+		/** Perform jobs until interrupted or abandoned */
+		@Override
+		public void run() {
+			try {
+				performJobs(this);
+			}
+			catch (InterruptedException e) {
+				if (!disposing && !abandoned)
+					handleException(e);
+			}
+		}
+
+		/** Begin performing one job of a batch (for the watchdog) */
+		private synchronized void begin(Job[] b, int i, int n) {
+			batch = b;
+			index = i;
+			n_jobs = n;
+			job = b[i];
+			started = TimeSteward.monotonicMillis();
+			runs++;
+		}
+
+		/** End performing a job.
+		 * @param r Flag to requeue the job after the batch.
+		 * @return false if thread was abandoned by the watchdog. */
+		private synchronized boolean end(boolean r) {
+			if (r && !abandoned)
+				repeat[n_repeat++] = job;
+			job = null;
+			batch = null;
+			// Clear interrupt status from the watchdog
+			if (interrupted && !disposing)
+				Thread.interrupted();
+			interrupted = false;
+			return !abandoned;
+		}
+	}
+
+	/** Watchdog thread (null if not started) */
+	private Thread watchdog;
+
+	/** Default timeout for jobs (ms), or 0 if watchdog is disabled */
+	private volatile long timeout_ms = 0;
+
+	/** Grace time after interrupting a hung job (ms) */
+	private volatile long grace_ms = 0;
+
+	/** Count of hung jobs detected */
+	private final AtomicLong n_hung = new AtomicLong();
+
+	/** Count of threads taken over */
+	private final AtomicLong n_takeover = new AtomicLong();
+
+	/** Thread waiting for the first job to become due.  Other idle
+	 * threads wait without a timeout until they are notified. */
+	private volatile Thread leader;
+
+	/** Monotonic time for the leader to wake up (ms) */
+	private long wake;
+
+	/** Flag indicating the wake time is a job deadline (not a periodic
+	 * wall clock check) */
+	private boolean wake_due;
+
+	/** Flag to use precision waits (parking instead of Object.wait) */
+	private volatile boolean precise = false;
+
+	/** Time to spin before a deadline with precision waits (ns) */
+	private volatile long spin_ns = 0;
+
+	/** Debug log for scheduled jobs */
+	private final DebugLog slog;
+
+	/** Queue of scheduled jobs to do */
+	private final JobQueue todo;
+
+	/** Due jobs taken from the queue, which have not been handed to a
+	 * thread yet */
+	private final ArrayDeque<Job> due = new ArrayDeque<Job>(BATCH_SIZE);
+
+	/** Count of cancelled jobs which are still in the queue */
+	private final AtomicInteger n_cancelled = new AtomicInteger();
+
+	/** One-shot jobs in the order they were added, for the DROP_OLDEST
+	 * policy.  Jobs which are no longer waiting are pruned lazily. */
+	private final ArrayDeque<Job> added = new ArrayDeque<Job>();
+
+	/** Offset from monotonic time to wall clock time (ms) */
+	private long skew;
+
+	/** Flag to indicate disposing */
+	private volatile boolean disposing = false;
+
+	/** Executor for performing jobs (null for scheduler threads) */
+	private volatile KeyedExecutor executor;
+
+	/** Stagger for spreading out jobs (null to disable) */
+	private Stagger stagger;
+
+	/** Executor for fan-out of batched jobs (null to disable) */
+	private volatile KeyedExecutor fan_out;
+
+	/** Task metrics (null if not enabled) */
+	private volatile TaskMetrics metrics;
+
+	/** Admission control for the job queue */
+	private final AdmissionControl admission = new AdmissionControl(
+		new IntSupplier() {
+			public int getAsInt() {
+				return size();
+			}
+		});
+
+	/** Create a new job scheduler */
+	public Scheduler() {
+		this("sched");
+	}
+
+	/** Create a new job scheduler */
+	public Scheduler(String name) {
+		this(name, null);
+	}
+
+	/** Create a new job scheduler */
+	public Scheduler(String name, ExceptionHandler h) {
+		this(name, h, 1);
+	}
+
+	/** Create a new job scheduler with a pool of threads.
+	 * @param name Name of scheduler (and debug log).
+	 * @param h Exception handler.
+	 * @param n_threads Number of threads for performing jobs. */
+	public Scheduler(String name, ExceptionHandler h, int n_threads) {
+		this(name, h, n_threads, new TreeJobQueue());
+	}
+
+	/** Create a new job scheduler with a pool of threads.
+	 * @param name Name of scheduler (and debug log).
+	 * @param h Exception handler.
+	 * @param n_threads Number of threads for performing jobs.
+	 * @param q Queue for scheduled jobs. */
+	public Scheduler(String name, ExceptionHandler h, int n_threads,
+		JobQueue q)
+	{
+		if (n_threads < 1)
+			throw new IllegalArgumentException("n_threads");
+		this.name = name;
+		slog = new DebugLog(name, h);
+		handler = h;
+		todo = q;
+		skew = TimeSteward.currentTimeMillis() -
+		       TimeSteward.monotonicMillis();
+		threads = new Dispatcher[n_threads];
+		for (int i = 0; i < n_threads; i++) {
+			String n = (n_threads > 1) ? (name + "-" + i) : name;
+			threads[i] = new Dispatcher(n);
+		}
+		for (Thread t: threads)
+			t.start();
+	}
+
+	/** Perform jobs as they are scheduled */
+	private void performJobs(Dispatcher d) throws InterruptedException {
+		Job[] batch = new Job[BATCH_SIZE];
+		while (!d.isInterrupted() && !d.abandoned) {
+			int n = waitJobs(batch);
+			KeyedExecutor ke = executor;
+			KeyedExecutor fo = fan_out;
+			if (ke != null) {
+				for (int i = 0; i < n; i++)
+					executeJob(ke, batch[i]);
+			} else if (fo != null && n > 1)
+				fanOutBatch(fo, batch, n);
+			else if (timeout_ms > 0)
+				performWatched(d, batch, n);
+			else {
+				for (int i = 0; i < n; i++) {
+					if (!performBatched(batch[i]))
+						batch[i] = null;
+				}
+				requeueJobs(batch, n);
+			}
+			for (int i = 0; i < n; i++)
+				batch[i] = null;
+		}
+	}
+
+	/** Perform a due job, then repeat or finish it.  A job which was
+	 * cancelled while waiting in a batch is skipped. */
+	private void performDue(Job job) {
+		if (job.isCancelled()) {
+			job.skip();
+			dropCancelled(job);
+		} else
+			finishJob(job, performJob(job));
+	}
+
+	/** Perform a due job in a batch.  A one-shot job is finished right
+	 * away, but a repeating job is left to be requeued with the rest of
+	 * the batch.  A job which was cancelled while waiting in a batch is
+	 * skipped.
+	 * @return true if the job must be requeued. */
+	private boolean performBatched(Job job) {
+		if (job.isCancelled()) {
+			job.skip();
+			dropCancelled(job);
+			return false;
+		}
+		Exception ex = performJob(job);
+		if (job.isRepeating() && null == ex)
+			return true;
+		finishJob(job, ex);
+		return false;
+	}
+
+	/** Perform a batch of jobs, watched by the watchdog.  If the thread
+	 * is abandoned, the rest of the batch has been taken over. */
+	private void performWatched(Dispatcher d, Job[] batch, int n) {
+		try {
+			for (int i = 0; i < n; i++) {
+				Job job = batch[i];
+				if (job.isCancelled()) {
+					job.skip();
+					dropCancelled(job);
+				} else {
+					d.begin(batch, i, n);
+					Exception ex = performJob(job);
+					boolean r = job.isRepeating() &&
+						null == ex;
+					if (!d.end(r)) {
+						finishJob(job, ex);
+						return;
+					}
+					if (!r)
+						finishJob(job, ex);
+				}
+				// Performed jobs must not be taken over
+				batch[i] = null;
+			}
+		}
+		finally {
+			requeueWatched(d);
+		}
+	}
+
+	/** Requeue the repeating jobs performed by a watched thread.  If the
+	 * thread was taken over, they have already been requeued. */
+	private void requeueWatched(Dispatcher d) {
+		int c;
+		synchronized (this) {
+			synchronized (d) {
+				c = repeatJobs(d.repeat, d.n_repeat);
+				for (int i = c; i < d.n_repeat; i++)
+					d.repeat[i] = null;
+				d.n_repeat = 0;
+			}
+		}
+		for (int i = 0; i < c; i++) {
+			d.repeat[i].finish(null);
+			d.repeat[i] = null;
+		}
+	}
+
+	/** Perform a batch of jobs in parallel with a fan-out executor, and
+	 * wait for all of them to finish */
+	private void fanOutBatch(KeyedExecutor fo, Job[] batch, int n) {
+		int n_fork = 0;
+		for (int i = 0; i < n; i++) {
+			if (!batch[i].requiresSchedulerThread())
+				n_fork++;
+		}
+		CountDownLatch done = new CountDownLatch(n_fork);
+		for (int i = 0; i < n; i++) {
+			if (!batch[i].requiresSchedulerThread())
+				forkJob(fo, batch, i, done);
+		}
+		for (int i = 0; i < n; i++) {
+			// Forked jobs may already be cleared (null)
+			Job job = batch[i];
+			if (job != null && job.requiresSchedulerThread() &&
+			    !performBatched(job))
+				batch[i] = null;
+		}
+		// The latch makes batch changes by other threads visible
+		awaitGroup(done);
+		requeueJobs(batch, n);
+	}
+
+	/** Fork one job of a batch to a fan-out executor.  The job is cleared
+	 * from the batch unless it must be requeued. */
+	private void forkJob(KeyedExecutor fo, final Job[] batch, final int i,
+		final CountDownLatch done)
+	{
+		final Job job = batch[i];
+		fo.execute(job.getKey(), new Runnable() {
+			public void run() {
+				CURRENT.set(Scheduler.this);
+				try {
+					if (!performBatched(job))
+						batch[i] = null;
+				}
+				finally {
+					CURRENT.remove();
+					done.countDown();
+				}
+			}
+		});
+	}
+
+	/** Wait for a group of jobs to finish.  The interrupt status of the
+	 * thread is kept, but jobs are always waited for. */
+	static private void awaitGroup(CountDownLatch done) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/** Execute a job with an executor */
+	private void executeJob(KeyedExecutor ke, final Job job) {
+		ke.execute(job.getKey(), new Runnable() {
+			public void run() {
+				CURRENT.set(Scheduler.this);
+				try {
+					performDue(job);
+				}
+				finally {
+					CURRENT.remove();
+				}
+			}
+		});
+	}
+
+	/** Wait until the next jobs need to be performed.
+	 * @param batch Array to store due jobs.
+	 * @return Number of jobs to be performed. */
+	private int waitJobs(Job[] batch) throws InterruptedException {
+		Thread t = Thread.currentThread();
+		while (true) {
+			int n = pollJobs(t, batch);
+			if (n > 0)
+				return n;
+			// Precision wait by the leader, outside of the lock
+			try {
+				parkLeader(t);
+			}
+			finally {
+				clearLeader(t);
+			}
+		}
+	}
+
+	/** Poll for all jobs which are due, waiting until the first one is
+	 * due.  With precision waits, the leader parks outside of this method
+	 * instead.
+	 * @param t Current thread.
+	 * @param batch Array to store due jobs.
+	 * @return Number of jobs to be performed, or 0 if the current thread
+	 *         is the leader and must park until the wake time. */
+	private synchronized int pollJobs(Thread t, Job[] batch)
+		throws InterruptedException
+	{
+		while (true) {
+			// We need to check the next job each time in case the
+			// job was removed or a new job was added while we
+			// were waiting
+			while (todo.isEmpty() && due.isEmpty())
+				wait();
+			long now = TimeSteward.monotonicMillis();
+			checkWallClock(now);
+			if (due.isEmpty())
+				pollDue(now);
+			if (!due.isEmpty())
+				return takeDue(batch);
+			if (todo.isEmpty())
+				continue;
+			long due_ms = todo.firstTime() - now;
+			long delay = Math.min(due_ms, CHECK_MS);
+			if (leader != null)
+				wait();
+			else if (precise) {
+				leader = t;
+				wake = now + delay;
+				wake_due = (due_ms <= CHECK_MS);
+				return 0;
+			} else {
+				leader = t;
+				try {
+					TimeSteward.wait(this, delay);
+				}
+				finally {
+					if (leader == t)
+						leader = null;
+				}
+			}
+		}
+	}
+
+	/** Take all jobs which are due (up to the batch size) from the queue.
+	 * Cancelled jobs are dropped.
+	 * @param now Current monotonic time. */
+	private void pollDue(long now) {
+		while (due.size() < BATCH_SIZE) {
+			Job job = todo.poll(now);
+			if (null == job)
+				break;
+			admission.release();
+			// Skip jobs which have been cancelled
+			if (job.start())
+				due.add(job);
+			else
+				dropQueued(job);
+		}
+	}
+
+	/** Take a share of the due jobs, leaving the rest for other threads.
+	 * Each thread takes an equal share, so that no thread is left with
+	 * most of a burst when the others become busy.
+	 * @param batch Array to store due jobs.
+	 * @return Number of jobs to be performed. */
+	private int takeDue(Job[] batch) {
+		int share = (due.size() + threads.length - 1) / threads.length;
+		int n = 0;
+		while (n < share)
+			batch[n++] = due.poll();
+		if (!due.isEmpty()) {
+			// Hand the rest to an idle thread
+			if (precise)
+				wakeLeader();
+			notify();
+		} else if (leader == null && !todo.isEmpty()) {
+			// Let another thread wait for the next job
+			notify();
+		}
+		return n;
+	}
+
+	/** Park the leader thread until the wake time, or until it is
+	 * unparked.  If spinning is enabled and the wake time is a job
+	 * deadline, the end of the delay is spent spinning instead of
+	 * parking. */
+	private void parkLeader(Thread t) throws InterruptedException {
+		long w = wake;
+		long spin = wake_due ? spin_ns : 0;
+		long ns = TimeSteward.nanosUntil(w) - spin;
+		if (ns > 0)
+			TimeSteward.parkNanos(this, ns);
+		else {
+			while (leader == t && TimeSteward.nanosUntil(w) > 0) {
+				// spin until deadline
+			}
+		}
+		if (Thread.interrupted())
+			throw new InterruptedException();
+	}
+
+	/** Clear the leader thread (if it has not changed) */
+	private synchronized void clearLeader(Thread t) {
+		if (leader == t)
+			leader = null;
+	}
+
+	/** Wake the leader thread, so it recomputes its delay */
+	private void wakeLeader() {
+		Thread l = leader;
+		leader = null;
+		if (l != null)
+			LockSupport.unpark(l);
+	}
+
+	/** Check for a wall clock jump, and re-anchor all queued jobs if it
+	 * has happened.  Cancelled jobs are dropped.
+	 * @param mono Current monotonic time. */
+	private void checkWallClock(long mono) {
+		long s = TimeSteward.currentTimeMillis() - mono;
+		long jump = s - skew;
+		skew = s;
+		if (Math.abs(jump) > JUMP_MS) {
+			ArrayList<Job> jobs = new ArrayList<Job>(todo.size());
+			todo.drainTo(jobs);
+			for (Job job: jobs) {
+				if (!job.isCancelled()) {
+					job.reanchor(mono);
+					todo.add(job);
+				} else
+					dropQueued(job);
+			}
+			// The leader must recompute its delay
+			wakeLeader();
+			notify();
+			if (slog.isOpen())
+				slog.log("WALL CLOCK JUMP: " + jump + " ms");
+		}
+	}
+
+	/** Perform a job.
+	 * @return Exception thrown by the job, or null. */
+	private Exception performJob(Job job) {
+		TaskMetrics m = metrics;
+		long start = (m != null) ? System.nanoTime() : 0;
+		long late = (m != null)
+		          ? TimeSteward.monotonicMillis() - job.getDeadline()
+		          : 0;
+		boolean op = slog.isOpen();
+		Exception ex = null;
+		try {
+			if (op)
+				slog.log("Starting " + job.getName());
+			job.performTask();
+		}
+		catch (Exception e) {
+			handleException(e);
+			ex = e;
+		}
+		catch (VirtualMachineError e) {
+			System.err.println("VIRTUAL MACHINE ERROR");
+			e.printStackTrace();
+			System.err.println("FATAL: RESTARTING");
+			System.exit(1);
+		}
+		finally {
+			if (op)
+				slog.log("Finished " + job.getName());
+		}
+		if (m != null) {
+			long run = System.nanoTime() - start;
+			m.record(job.getName(), late * 1000, run / 1000,
+				ex != null);
+		}
+		return ex;
+	}
+
+	/** Finish a job after it has been performed.  Repeating jobs are
+	 * added back to the "todo" list, unless they were cancelled while
+	 * being performed.  Otherwise, the job's future is completed (outside
+	 * of the scheduler lock).  One-shot jobs never take the lock. */
+	private void finishJob(Job job, Exception ex) {
+		if (!job.isRepeating() || !repeatJob(job))
+			job.finish(ex);
+	}
+
+	/** Add a repeating job back to the "todo" list.
+	 * @return true if the job was repeated. */
+	private synchronized boolean repeatJob(Job job) {
+		if (job.reschedule()) {
+			advanceJob(job);
+			return true;
+		} else {
+			dropJob(job);
+			return false;
+		}
+	}
+
+	/** Requeue the repeating jobs of a batch in one critical section.
+	 * Jobs which were cancelled while being performed are finished
+	 * (outside of the scheduler lock).
+	 * @param jobs Array of jobs, with null for jobs already finished.
+	 * @param n Number of entries in array. */
+	private void requeueJobs(Job[] jobs, int n) {
+		int r = 0;
+		for (int i = 0; i < n; i++) {
+			if (jobs[i] != null)
+				jobs[r++] = jobs[i];
+		}
+		if (r > 0) {
+			int c = repeatJobs(jobs, r);
+			for (int i = 0; i < c; i++)
+				jobs[i].finish(null);
+		}
+	}
+
+	/** Add repeating jobs back to the "todo" list.  Jobs which were
+	 * cancelled are moved to the start of the array.
+	 * @return Number of cancelled jobs. */
+	private synchronized int repeatJobs(Job[] jobs, int n) {
+		int c = 0;
+		for (int i = 0; i < n; i++) {
+			Job job = jobs[i];
+			if (job.reschedule())
+				advanceJob(job);
+			else {
+				dropJob(job);
+				jobs[c++] = job;
+			}
+		}
+		return c;
+	}
+
+	/** Advance a repeating job to its next time, and schedule it */
+	private void advanceJob(Job job) {
+		long o = job.getOverrunCount();
+		long m = job.getMissedCount();
+		long mono = TimeSteward.monotonicMillis();
+		if (stagger != null)
+			stagger.check(job, mono);
+		job.advance(TimeSteward.currentTimeMillis(), mono);
+		recordMisfire(job, o, m);
+		scheduleJob(job);
+	}
+
+	/** Drop a cancelled job from its stagger group */
+	private void dropJob(Job job) {
+		if (stagger != null && job.isCancelled())
+			stagger.remove(job);
+	}
+
+	/** Drop a cancelled job which was taken from the queue */
+	private void dropQueued(Job job) {
+		n_cancelled.decrementAndGet();
+		dropJob(job);
+	}
+
+	/** Purge cancelled jobs from the queue, if they are more than half of
+	 * it.  This keeps lazily cancelled jobs from filling up the queue. */
+	private void checkPurge() {
+		int c = n_cancelled.get();
+		if (c >= PURGE_MIN && c > todo.size() / 2) {
+			ArrayList<Job> jobs = new ArrayList<Job>(todo.size());
+			todo.drainTo(jobs);
+			for (Job job: jobs) {
+				if (!job.isCancelled())
+					todo.add(job);
+				else
+					dropQueued(job);
+			}
+		}
+	}
+
+	/** Drop a job which was cancelled while waiting in a batch */
+	private synchronized void dropCancelled(Job job) {
+		dropJob(job);
+	}
+
+	/** Record overruns and missed times for a job in task metrics.
+	 * @param job Job which was advanced or added.
+	 * @param o Previous overrun count.
+	 * @param m Previous missed count. */
+	private void recordMisfire(Job job, long o, long m) {
+		TaskMetrics tm = metrics;
+		if (tm != null) {
+			o = job.getOverrunCount() - o;
+			m = job.getMissedCount() - m;
+			if (o > 0 || m > 0)
+				tm.recordMisfire(job.getName(), o, m);
+		}
+	}
+
+	/** Add a job to the "todo" list and wake up a waiting thread */
+	private void scheduleJob(Job job) {
+		long first = todo.firstTime();
+		todo.add(job);
+		// The leader must recompute its delay if the job is first
+		if (todo.firstTime() < first)
+			wakeLeader();
+		notify();
+	}
+
+	/** Add a job for this scheduler to perform.  If the queue is full,
+	 * the overflow policy determines what happens.
+	 * @param job Job to perform.
+	 * @return Handle which can be used to cancel the job, or to chain
+	 *         processing when it finishes.
+	 * @throws RejectedExecutionException if the queue is full, with the
+	 *         REJECT policy (or BLOCK, after the timeout). */
+	public JobHandle addJob(Job job) {
+		if (admission.admit(!isCurrentThread()))
+			return scheduleNewJob(job);
+		if (admission.getPolicy() != OverflowPolicy.DROP_NEWEST)
+			throw new RejectedExecutionException(name);
+		CompletableFuture<Job> f = new CompletableFuture<Job>();
+		f.cancel(false);
+		return new JobHandle(job, f);
+	}
+
+	/** Try to add a job for this scheduler to perform, without blocking.
+	 * @param job Job to perform.
+	 * @return Handle for the job, or null if the queue is full. */
+	public JobHandle tryAddJob(Job job) {
+		return admission.admit(false) ? scheduleNewJob(job) : null;
+	}
+
+	/** Schedule a new job */
+	private synchronized JobHandle scheduleNewJob(Job job) {
+		// A queued job must be removed before its deadline can change
+		if (todo.remove(job) && job.isCancelled())
+			n_cancelled.decrementAndGet();
+		checkPurge();
+		CompletableFuture<Job> f = job.schedule(n_cancelled);
+		// Make room by dropping the oldest one-shot job
+		if (admission.dropOldest())
+			dropOldest();
+		// Move a job which is not due yet to its staggered time
+		if (stagger != null &&
+		    stagger.add(job, TimeSteward.monotonicMillis()) &&
+		    job.delay() > 0)
+			job.computeNextTime();
+		long o = job.getOverrunCount();
+		long m = job.getMissedCount();
+		job.checkMisfire();
+		recordMisfire(job, o, m);
+		scheduleJob(job);
+		if (!job.isRepeating())
+			addOneShot(job);
+		if (slog.isOpen() && todo.size() > 5000)
+			slog.log("OVERLOADED: " + todo.size());
+		return new JobHandle(job, f);
+	}
+
+	/** Add a one-shot job to the list of added jobs */
+	private void addOneShot(Job job) {
+		added.add(job);
+		// Prune jobs which are no longer waiting
+		if (added.size() > 2 * todo.size() + PURGE_MIN) {
+			Iterator<Job> it = added.iterator();
+			while (it.hasNext()) {
+				if (!it.next().isWaiting(n_cancelled))
+					it.remove();
+			}
+		}
+	}
+
+	/** Drop the oldest one-shot job which is still waiting */
+	private void dropOldest() {
+		while (!added.isEmpty()) {
+			if (added.poll().shed(n_cancelled)) {
+				admission.dropped();
+				return;
+			}
+		}
+	}
+
+	/** Set the capacity of the job queue.
+	 * @param cap Maximum number of jobs (not including cancelled jobs).
+	 * @param p Policy for adding jobs when the queue is full.
+	 * @param ms Maximum time to block producers (BLOCK policy). */
+	public void setCapacity(int cap, OverflowPolicy p, long ms) {
+		admission.setCapacity(cap, p, ms);
+	}
+
+	/** Get the count of jobs shed because the queue was full */
+	public long getShedCount() {
+		return admission.getShedCount();
+	}
+
+	/** Get the count of producers blocked because the queue was full */
+	public long getBlockedCount() {
+		return admission.getBlockedCount();
+	}
+
+	/** Remove a job from this scheduler.  This takes effect immediately,
+	 * but if the job is being performed, it will not be interrupted. */
+	public void removeJob(Job job) {
+		job.cancel();
+	}
+
+	/** Set an executor for performing jobs.  Jobs will still be
+	 * dispatched by the scheduler threads, in time order.  Jobs with equal
+	 * keys are never performed concurrently.
+	 * @param e Executor, or null to perform jobs on scheduler threads. */
+	public void setExecutor(Executor e) {
+		executor = (e != null) ? new KeyedExecutor(e) : null;
+	}
+
+	/** Set an executor for fan-out of jobs which are due at the same
+	 * time.  Jobs in each batch are performed in parallel, and the
+	 * scheduler thread waits for all of them before taking more jobs.
+	 * Jobs with equal keys are never performed concurrently.  This
+	 * has no effect when an executor is set with setExecutor.
+	 * @param e Executor (such as a ForkJoinPool), or null to perform jobs
+	 *          on scheduler threads. */
+	public void setFanOut(Executor e) {
+		fan_out = (e != null) ? new KeyedExecutor(e) : null;
+	}
+
+	/** Enable or disable stagger mode.  With stagger, repeating jobs with
+	 * the same interval (of hours or less) and no offset are spread out
+	 * within the interval, weighted by their execution times.  Each job
+	 * stays aligned to its interval.  This only affects jobs added after
+	 * it is enabled; disabling it keeps the current job offsets.
+	 * @param s True to stagger jobs. */
+	public synchronized void setStagger(boolean s) {
+		if (s && null == stagger)
+			stagger = new Stagger();
+		else if (!s)
+			stagger = null;
+	}
+
+	/** Set the watchdog for hung jobs.  A job can override the default
+	 * timeout (see Job.getTimeout).  Timeouts are checked at least once
+	 * per second.
+	 * @param timeout Default timeout for jobs (ms), or 0 to disable the
+	 *                watchdog.
+	 * @param grace Time after interrupting a hung job before taking over
+	 *              its thread (ms). */
+	public synchronized void setWatchdog(long timeout, long grace) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout");
+		if (grace < 0)
+			throw new IllegalArgumentException("grace");
+		timeout_ms = timeout;
+		grace_ms = grace;
+		if (timeout > 0 && null == watchdog) {
+			watchdog = new Thread(GROUP, name + "-watchdog") {
+				public void run() {
+					try {
+						watch();
+					}
+					catch (InterruptedException e) {
+						// disposed
+					}
+				}
+			};
+			watchdog.setDaemon(true);
+			watchdog.start();
+		}
+	}
+
+	/** Watch scheduler threads for hung jobs */
+	private void watch() throws InterruptedException {
+		while (!disposing) {
+			long t = timeout_ms;
+			if (t > 0) {
+				long g = grace_ms;
+				long p = Math.min(t, (g > 0) ? g : t) / 4;
+				TimeSteward.sleep(Math.max(1, Math.min(p,
+					WATCH_MS)));
+				checkThreads();
+			} else
+				TimeSteward.sleep(WATCH_MS);
+		}
+	}
+
+	/** Check all scheduler threads for hung jobs */
+	private void checkThreads() {
+		Dispatcher[] ds;
+		synchronized (this) {
+			ds = threads.clone();
+		}
+		long now = TimeSteward.monotonicMillis();
+		for (Dispatcher d: ds)
+			checkHung(d, now);
+	}
+
+	/** Check one scheduler thread for a hung job */
+	private void checkHung(Dispatcher d, long now) {
+		Job job;
+		long runs;
+		long elapsed;
+		boolean interrupted;
+		synchronized (d) {
+			job = d.job;
+			runs = d.runs;
+			elapsed = now - d.started;
+			interrupted = d.interrupted;
+		}
+		if (null == job)
+			return;
+		long t = job.getTimeout();
+		if (t <= 0)
+			t = timeout_ms;
+		if (t <= 0 || elapsed <= t)
+			return;
+		if (!interrupted)
+			interruptHung(d, job, runs, elapsed);
+		else if (elapsed > t + grace_ms)
+			takeOver(d, job, runs);
+	}
+
+	/** Report a hung job with the stack of its thread, and interrupt it */
+	private void interruptHung(Dispatcher d, Job job, long runs,
+		long elapsed)
+	{
+		StackTraceElement[] stack = d.getStackTrace();
+		synchronized (d) {
+			if (d.job != job || d.runs != runs)
+				return;
+			d.interrupted = true;
+			d.interrupt();
+		}
+		n_hung.incrementAndGet();
+		String msg = "HUNG JOB: " + job.getName() + " on " +
+			d.getName() + " for " + elapsed + " ms";
+		if (slog.isOpen())
+			slog.log(msg);
+		TimeoutException e = new TimeoutException(msg);
+		e.setStackTrace(stack);
+		handleException(e);
+	}
+
+	/** Take over the jobs of a hung thread.  The thread is abandoned, and
+	 * the rest of its batch is put back on the queue for a fresh thread.
+	 * Jobs which were performed before the hung job have already been
+	 * finished and cleared from the batch, and repeating ones are
+	 * requeued here.  The hung job itself is finished if the thread ever
+	 * returns. */
+	private synchronized void takeOver(Dispatcher d, Job job, long runs) {
+		if (disposing)
+			return;
+		synchronized (d) {
+			if (d.job != job || d.runs != runs || d.abandoned)
+				return;
+			d.abandoned = true;
+			// Requeue repeating jobs performed before the hung one
+			int c = repeatJobs(d.repeat, d.n_repeat);
+			for (int i = 0; i < c; i++)
+				d.repeat[i].finish(null);
+			d.n_repeat = 0;
+			for (int i = 0; i < d.n_jobs; i++) {
+				Job j = d.batch[i];
+				if (j != null && i != d.index) {
+					if (j.reschedule())
+						scheduleJob(j);
+					else
+						j.skip();
+				}
+			}
+		}
+		for (int i = 0; i < threads.length; i++) {
+			if (threads[i] == d) {
+				threads[i] = new Dispatcher(d.getName());
+				threads[i].start();
+			}
+		}
+		n_takeover.incrementAndGet();
+		if (slog.isOpen())
+			slog.log("TAKEOVER: " + d.getName());
+	}
+
+	/** Get the count of hung jobs detected by the watchdog */
+	public long getHungCount() {
+		return n_hung.get();
+	}
+
+	/** Get the count of hung threads taken over by the watchdog */
+	public long getTakeoverCount() {
+		return n_takeover.get();
+	}
+
+	/** Set precision wait mode.  Spinning keeps a scheduler thread busy
+	 * for the spin time before each deadline, so it should only be used
+	 * with spare processors.
+	 * @param p True to park with nanosecond timeouts, false to use
+	 *          Object.wait.
+	 * @param spin Time to spin before each deadline (ns), or 0. */
+	public synchronized void setPrecisionWait(boolean p, long spin) {
+		if (spin < 0)
+			throw new IllegalArgumentException("spin");
+		spin_ns = spin;
+		precise = p;
+		wakeLeader();
+		notifyAll();
+	}
+
+	/** Test if the current thread is a scheduler thread (or is performing
+	 * a job for this scheduler with an executor) */
+	public boolean isCurrentThread() {
+		if (CURRENT.get() == this)
+			return true;
+		// Threads can be replaced by the watchdog, so don't check them
+		Thread t = Thread.currentThread();
+		return (t instanceof Dispatcher) &&
+		       ((Dispatcher) t).getScheduler() == this;
+	}
+
+	/** Get the count of jobs in the queue (not including cancelled jobs
+	 * which have not been dropped yet) */
+	public synchronized int size() {
+		return Math.max(todo.size() - n_cancelled.get(), 0);
+	}
+
+	/** Enable task metrics, and publish them as JMX MBeans */
+	public synchronized void enableMetrics() {
+		if (null == metrics) {
+			metrics = new TaskMetrics("Scheduler", name,
+				new IntSupplier() {
+					public int getAsInt() {
+						return size();
+					}
+				}, admission,
+				new ExceptionHandler() {
+					public boolean handle(Exception e) {
+						handleException(e);
+						return true;
+					}
+				});
+		}
+	}
+
+	/** Get the task metrics (null if not enabled) */
+	public TaskMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Dispose of the scheduler */
+	public void dispose() {
+		TaskMetrics m = metrics;
+		if (m != null)
+			m.unregister();
+		disposing = true;
+		synchronized (this) {
+			for (Thread t: threads)
+				t.interrupt();
+			if (watchdog != null)
+				watchdog.interrupt();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Task metrics for a scheduler or worker.  Statistics are kept for each task
+ * name, and published as JMX MBeans on the platform MBean server:
+ *
+ *   us.mn.state.dot.sched:type={type},name={name},id={id}
+ *   us.mn.state.dot.sched:type={type},name={name},id={id},task={task}
+ *
+ * The id is unique for each instance, since many owners can have the same
+ * name (such as the default "sched").
+ *
+ * @author Douglas Lau
+ */
+public final class TaskMetrics implements TaskMetricsMBean {
+
+	/** JMX domain */
+	static private final String DOMAIN = "us.mn.state.dot.sched";
+
+	/** Count of instances, for unique object names */
+	static private final AtomicInteger N_INSTANCES = new AtomicInteger();
+
+	/** MBean server */
+	private final MBeanServer server =
+		ManagementFactory.getPlatformMBeanServer();
+
+	/** Base object name */
+	private final String base;
+
+	/** Queue depth supplier */
+	private final IntSupplier depth;
+
+	/** Admission control (may be null) */
+	private final AdmissionControl admission;
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Statistics for each task name */
+	private final ConcurrentHashMap<String, TaskStats> stats =
+		new ConcurrentHashMap<String, TaskStats>();
+
+	/** Create task metrics.
+	 * @param type Type of owner (Scheduler or Worker).
+	 * @param name Name of owner.
+	 * @param d Queue depth supplier.
+	 * @param ac Admission control (may be null).
+	 * @param h Exception handler for JMX errors. */
+	TaskMetrics(String type, String name, IntSupplier d,
+		AdmissionControl ac, ExceptionHandler h)
+	{
+		base = DOMAIN + ":type=" + type + ",name=" +
+			ObjectName.quote(name) + ",id=" +
+			N_INSTANCES.incrementAndGet();
+		depth = d;
+		admission = ac;
+		handler = h;
+		register(base, this);
+	}
+
+	/** Register an MBean */
+	private void register(String on, Object mbean) {
+		try {
+			server.registerMBean(mbean, new ObjectName(on));
+		}
+		catch (JMException e) {
+			handler.handle(e);
+		}
+	}
+
+	/** Get the object name for a task */
+	private String taskName(String task) {
+		return base + ",task=" + ObjectName.quote(task);
+	}
+
+	/** Record one run of a task.
+	 * @param task Task name.
+	 * @param late_us Lateness (us).
+	 * @param run_us Execution time (us).
+	 * @param failed True if the task threw an exception. */
+	void record(String task, long late_us, long run_us, boolean failed) {
+		TaskStats ts = stats.get(task);
+		if (null == ts)
+			ts = createStats(task);
+		ts.record(late_us, run_us, failed);
+	}
+
+	/** Record a duplicate coalesced into pending work.
+	 * @param task Task name. */
+	void recordCoalesced(String task) {
+		TaskStats ts = stats.get(task);
+		if (null == ts)
+			ts = createStats(task);
+		ts.recordCoalesced();
+	}
+
+	/** Record overruns and missed times of a repeating job.
+	 * @param task Task name.
+	 * @param o Number of overruns.
+	 * @param m Number of missed times. */
+	void recordMisfire(String task, long o, long m) {
+		TaskStats ts = stats.get(task);
+		if (null == ts)
+			ts = createStats(task);
+		ts.recordMisfire(o, m);
+	}
+
+	/** Create statistics for a new task name */
+	private TaskStats createStats(String task) {
+		TaskStats ts = new TaskStats();
+		TaskStats prev = stats.putIfAbsent(task, ts);
+		if (prev != null)
+			return prev;
+		register(taskName(task), ts);
+		return ts;
+	}
+
+	/** Get statistics for a task */
+	public TaskStats getStats(String task) {
+		return stats.get(task);
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return depth.getAsInt();
+	}
+
+	@Override
+	public long getShedCount() {
+		return (admission != null) ? admission.getShedCount() : 0;
+	}
+
+	@Override
+	public long getBlockedCount() {
+		return (admission != null) ? admission.getBlockedCount() : 0;
+	}
+
+	@Override
+	public String[] getTaskNames() {
+		return stats.keySet().toArray(new String[0]);
+	}
+
+	/** Unregister all MBeans */
+	void unregister() {
+		try {
+			for (String task: stats.keySet()) {
+				server.unregisterMBean(new ObjectName(
+					taskName(task)));
+			}
+			server.unregisterMBean(new ObjectName(base));
+		}
+		catch (JMException e) {
+			handler.handle(e);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * Management interface for a scheduler or worker.
+ *
+ * @author Douglas Lau
+ */
+public interface TaskMetricsMBean {
+
+	/** Get the current number of tasks in the queue */
+	int getQueueDepth();
+
+	/** Get the number of tasks shed (rejected or dropped) when the queue
+	 * was at capacity */
+	long getShedCount();
+
+	/** Get the number of producers blocked when the queue was at
+	 * capacity */
+	long getBlockedCount();
+
+	/** Get the names of all tasks which have been performed */
+	String[] getTaskNames();
+}
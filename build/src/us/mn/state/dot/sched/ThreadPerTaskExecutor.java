@@ -0,0 +1,88 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor which runs each task on its own thread.  When the Java runtime
+ * supports virtual threads, they are used, so blocking I/O only ties up a
+ * few carrier threads.  Otherwise, a cached pool of daemon platform threads
+ * is used.
+ *
+ * @author Douglas Lau
+ */
+public final class ThreadPerTaskExecutor implements Executor {
+
+	/** Create a virtual thread factory, if supported by the runtime.
+	 * @param name Thread name prefix.
+	 * @return Thread factory, or null if virtual threads are missing. */
+	static private ThreadFactory createVirtualFactory(String name) {
+		try {
+			Class<?> bc = Class.forName("java.lang.Thread$Builder");
+			Object b = Thread.class.getMethod("ofVirtual")
+				.invoke(null);
+			b = bc.getMethod("name", String.class, long.class)
+				.invoke(b, name + "-", 0L);
+			return (ThreadFactory) bc.getMethod("factory").invoke(b);
+		}
+		catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/** Thread group for platform threads */
+	static private final ThreadGroup GROUP = new ThreadGroup("TASK");
+
+	/** Virtual thread factory (null if not supported) */
+	private final ThreadFactory virtual;
+
+	/** Platform thread pool (null if virtual threads are supported) */
+	private final ExecutorService pool;
+
+	/** Create a new thread-per-task executor.
+	 * @param name Thread name prefix. */
+	public ThreadPerTaskExecutor(final String name) {
+		virtual = createVirtualFactory(name);
+		pool = (virtual != null) ? null : Executors.newCachedThreadPool(
+			new ThreadFactory() {
+				private final AtomicInteger n = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(GROUP, r, name + "-" +
+						n.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	}
+
+	/** Check if tasks are run on virtual threads */
+	public boolean isVirtual() {
+		return virtual != null;
+	}
+
+	/** Execute a task on its own thread */
+	@Override
+	public void execute(Runnable r) {
+		if (virtual != null)
+			virtual.newThread(r).start();
+		else
+			pool.execute(r);
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2010-2012  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Time Source abstracts the system time.
+ *
+ * @author Douglas Lau
+ */
+public interface TimeSource {
+
+	/** Get the current time */
+	long currentTimeMillis();
+
+	/** Get the current value of a monotonic clock, in nanoseconds.  This
+	 * is not related to the wall clock time, and only differences between
+	 * two values are meaningful.  The default is System.nanoTime(). */
+	default long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/** Sleep for the specified number of milliseconds */
+	void sleep(long millis) throws InterruptedException;
+
+	/** Wait until an object is notified, or timeout expires */
+	void wait(Object monitor, long ms) throws InterruptedException;
+
+	/** Park the current thread until it is unparked, interrupted, or the
+	 * timeout expires (see LockSupport.parkNanos).
+	 * @param blocker Object responsible for parking.
+	 * @param nanos Maximum time to park (ns). */
+	default void parkNanos(Object blocker, long nanos) {
+		LockSupport.parkNanos(blocker, nanos);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2010-2014  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.net.Socket;			// Suppress javadoc warning
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * The time steward provides static methods dealing with time sources.
+ * To use this class correctly, there are several standard library methods
+ * which must be avoided (or used only carefully).
+ *
+ * @see java.lang.System#currentTimeMillis()
+ * @see java.lang.Object#wait(long)
+ * @see java.lang.Object#wait(long, int)
+ * @see java.lang.Thread#join(long)
+ * @see java.lang.Thread#join(long, int)
+ * @see java.lang.Thread#sleep(long)
+ * @see java.lang.Thread#sleep(long, int)
+ * @see java.net.DatagramSocket#setSoTimeout(int)
+ * @see java.net.Socket#connect(java.net.SocketAddress, int)
+ * @see java.net.Socket#setSoTimeout(int)
+ * @see java.net.URLConnection#setConnectTimeout(int)
+ * @see java.net.URLConnection#setReadTimeout(int)
+ * @see java.util.Calendar#getInstance()
+ * @see java.util.Date#Date()
+ *
+ * @author Douglas Lau
+ */
+public final class TimeSteward {
+
+	/** Time source */
+	static private TimeSource source = new SystemTimeSource();
+
+	/** Monotonic time when the time source was set (ns) */
+	static private long anchor_ns = source.nanoTime();
+
+	/** Wall clock time when the time source was set (ms) */
+	static private long anchor_ms = source.currentTimeMillis();
+
+	/** Cache for formatting local times */
+	static private final DateTimeCache LOCAL = new DateTimeCache(true);
+
+	/** Cache for formatting UTC times */
+	static private final DateTimeCache UTC = new DateTimeCache(false);
+
+	/** Don't allow instantiation */
+	private TimeSteward() { }
+
+	/** Set the time source.  The default time zone is checked again,
+	 * since the last check was timed with the old source. */
+	static public void setTimeSource(TimeSource ts) {
+		assert ts != null;
+		anchor_ns = ts.nanoTime();
+		anchor_ms = ts.currentTimeMillis();
+		source = ts;
+		LOCAL.checkZone();
+	}
+
+	/** Get the current time */
+	static public long currentTimeMillis() {
+		return source.currentTimeMillis();
+	}
+
+	/** Get the current value of the monotonic clock (ns) */
+	static public long nanoTime() {
+		return source.nanoTime();
+	}
+
+	/** Get the current monotonic time in milliseconds.  This starts out
+	 * equal to the wall clock time when the time source is set, but is not
+	 * affected by any later changes to the wall clock. */
+	static public long monotonicMillis() {
+		return anchor_ms + (source.nanoTime() - anchor_ns) / 1000000;
+	}
+
+	/** Get the time until a monotonic time, in nanoseconds.
+	 * @param mono Monotonic time (ms), from monotonicMillis.
+	 * @return Nanoseconds until the start of that millisecond. */
+	static public long nanosUntil(long mono) {
+		long ns = anchor_ns + (mono - anchor_ms) * 1000000;
+		return ns - source.nanoTime();
+	}
+
+	/** Sleep for the specified number of milliseconds */
+	static public void sleep(long ms) throws InterruptedException {
+		source.sleep(ms);
+	}
+
+	/** Sleep without interruption */
+	static public void sleep_well(long ms) {
+		try {
+			sleep(ms);
+		}
+		catch (InterruptedException e) {
+			// Ignore
+		}
+	}
+
+	/** Wait until an object is notified, or timeout expires */
+	static public void wait(Object monitor, long ms)
+		throws InterruptedException
+	{
+		source.wait(monitor, ms);
+	}
+
+	/** Park the current thread until unparked, or timeout expires */
+	static public void parkNanos(Object blocker, long nanos) {
+		source.parkNanos(blocker, nanos);
+	}
+
+	/** Get a date instance from the time source */
+	static public Date getDateInstance() {
+		return new Date(currentTimeMillis());
+	}
+
+	/** Get a calendar instance from the time source */
+	static public Calendar getCalendarInstance() {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(currentTimeMillis());
+		return cal;
+	}
+
+	/** Get the current local minute-of-day as an int */
+	static public int currentMinuteOfDayInt() {
+		return currentSecondOfDayInt() / 60;
+	}
+
+	/** Get the current local second-of-day as an int */
+	static public int currentSecondOfDayInt() {
+		return secondOfDayInt(currentTimeMillis());
+	}
+
+	/** Get the local time zone (the default is checked periodically) */
+	static ZoneId localZone() {
+		return LOCAL.getZone();
+	}
+
+	/** Get the local UTC offset at a time (ms) */
+	static long localOffset(long time) {
+		return LOCAL.offset(time);
+	}
+
+	/** Get the local second-of-day as an int */
+	static public int secondOfDayInt(long time) {
+		return LOCAL.secondOfDay(time);
+	}
+
+	/** Get the current local date as a short YYYYMMDD string */
+	static public String currentDateShortString() {
+		return dateShortString(currentTimeMillis());
+	}
+
+	/** Get current date and time as string.
+	 * @param local True for local time, false for UTC.
+	 */
+	static public String currentDateTimeString(boolean local) {
+		return dateTimeString(currentTimeMillis(), local);
+	}
+
+	/** Get date and time as string.
+	 * @param date Time to format.
+	 * @param local True for local time, false for UTC.
+	 */
+	static public String dateTimeString(long date, boolean local) {
+		return local ? LOCAL.dateTime(date) : UTC.dateTime(date);
+	}
+
+	/** Get the local date as a short YYYYMMDD string */
+	static public String dateShortString(long date) {
+		return LOCAL.dateShort(date);
+	}
+
+	/** Get the current local time as short string */
+	static public String currentTimeShortString() {
+		return timeShortString(currentTimeMillis());
+	}
+
+	/** Get the local time as short HH:mm:ss string */
+	static public String timeShortString(long date) {
+		return LOCAL.time(date);
+	}
+}
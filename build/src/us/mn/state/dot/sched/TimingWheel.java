@@ -0,0 +1,253 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Collection;
+
+/**
+ * Job queue implemented as a hierarchical timing wheel.  Each level has 64
+ * slots, with a resolution of 1 ms at level 0, 64 ms at level 1, 4096 ms at
+ * level 2, etc.  A job is placed on the level of the highest 6-bit group
+ * where its due time differs from the current wheel time.  When the first
+ * slot of a higher level comes due, its jobs are cascaded down to lower
+ * levels.  Each slot is an intrusive doubly-linked list, with jobs appended
+ * at the tail and polled from the head, so adding or removing a job is O(1)
+ * and needs no allocation.
+ *
+ * Jobs which are due in the same millisecond are performed in the order they
+ * were added, rather than by their Comparable implementation.  The same is
+ * true for jobs which were added after they were already due.
+ *
+ * @author Douglas Lau
+ */
+public final class TimingWheel implements JobQueue {
+
+	/** Number of bits per level */
+	static private final int BITS = 6;
+
+	/** Number of slots per level */
+	static private final int SLOTS = 1 << BITS;
+
+	/** Mask for slot number */
+	static private final int SLOT_MASK = SLOTS - 1;
+
+	/** Number of levels (enough to cover all 64 bits) */
+	static private final int LEVELS = (64 + BITS - 1) / BITS;
+
+	/** Slot number for jobs which were added after their due time */
+	static private final int EXPIRED = LEVELS * SLOTS;
+
+	/** Slot number for jobs which are not in a wheel */
+	static final int NONE = -1;
+
+	/** Get the start time of a slot.
+	 * @param now Current wheel time.
+	 * @param level Wheel level.
+	 * @param s Slot number.
+	 * @return Time of first millisecond in slot. */
+	static private long slotTime(long now, int level, int s) {
+		int shift = BITS * level;
+		int above = shift + BITS;
+		long base = (above < 64) ? (now & (-1L << above)) : 0;
+		return base | ((long) s << shift);
+	}
+
+	/** Heads of job lists for all slots (plus expired list) */
+	private final Job[] heads = new Job[EXPIRED + 1];
+
+	/** Tails of job lists for all slots (plus expired list) */
+	private final Job[] tails = new Job[EXPIRED + 1];
+
+	/** Occupied slot bits for each level */
+	private final long[] occupied = new long[LEVELS];
+
+	/** Current wheel time (ms) */
+	private long elapsed = 0;
+
+	/** Number of jobs in the wheel */
+	private int n_jobs = 0;
+
+	/** Create a new timing wheel */
+	public TimingWheel() { }
+
+	/** Get the slot number for a due time */
+	private int slotNumber(long due) {
+		if (due < elapsed)
+			return EXPIRED;
+		long diff = due ^ elapsed;
+		int level = (diff != 0)
+		          ? (63 - Long.numberOfLeadingZeros(diff)) / BITS
+		          : 0;
+		int s = (int) (due >>> (BITS * level)) & SLOT_MASK;
+		return level * SLOTS + s;
+	}
+
+	/** Add a job to the wheel */
+	@Override
+	public void add(Job job) {
+		if (job.wheel_slot != NONE)
+			unlink(job);
+		link(job, slotNumber(job.getDeadline()));
+		n_jobs++;
+	}
+
+	/** Link a job at the tail of a slot list */
+	private void link(Job job, int slot) {
+		Job tail = tails[slot];
+		job.wheel_slot = slot;
+		job.wheel_prev = tail;
+		job.wheel_next = null;
+		if (tail != null)
+			tail.wheel_next = job;
+		else {
+			heads[slot] = job;
+			if (slot < EXPIRED) {
+				occupied[slot / SLOTS] |=
+					1L << (slot & SLOT_MASK);
+			}
+		}
+		tails[slot] = job;
+	}
+
+	/** Unlink a job from its slot list */
+	private void unlink(Job job) {
+		int slot = job.wheel_slot;
+		Job prev = job.wheel_prev;
+		Job next = job.wheel_next;
+		if (next != null)
+			next.wheel_prev = prev;
+		else
+			tails[slot] = prev;
+		if (prev != null)
+			prev.wheel_next = next;
+		else {
+			heads[slot] = next;
+			if (next == null && slot < EXPIRED) {
+				occupied[slot / SLOTS] &=
+					~(1L << (slot & SLOT_MASK));
+			}
+		}
+		job.wheel_slot = NONE;
+		job.wheel_prev = null;
+		job.wheel_next = null;
+		n_jobs--;
+	}
+
+	/** Remove a job from the wheel */
+	@Override
+	public boolean remove(Job job) {
+		if (job.wheel_slot != NONE) {
+			unlink(job);
+			return true;
+		} else
+			return false;
+	}
+
+	/** Remove all jobs from the wheel */
+	@Override
+	public void drainTo(Collection<Job> c) {
+		for (int slot = 0; slot <= EXPIRED; slot++) {
+			while (heads[slot] != null) {
+				Job job = heads[slot];
+				unlink(job);
+				c.add(job);
+			}
+		}
+	}
+
+	/** Find the first occupied slot.  Jobs on lower levels are always
+	 * due before jobs on higher levels, and no slots before the current
+	 * wheel time are occupied.
+	 * @return Slot number, or NONE if the wheel is empty. */
+	private int firstSlot() {
+		for (int level = 0; level < LEVELS; level++) {
+			int pos = (int) (elapsed >>> (BITS * level)) &
+				SLOT_MASK;
+			long occ = occupied[level] & (-1L << pos);
+			if (occ != 0) {
+				return level * SLOTS +
+				       Long.numberOfTrailingZeros(occ);
+			}
+		}
+		return NONE;
+	}
+
+	/** Remove the first job which is due */
+	@Override
+	public Job poll(long now) {
+		if (n_jobs == 0) {
+			elapsed = Math.max(elapsed, now);
+			return null;
+		}
+		Job job = heads[EXPIRED];
+		if (job != null) {
+			unlink(job);
+			return job;
+		}
+		for (int slot = firstSlot(); slot != NONE; slot = firstSlot()) {
+			int level = slot / SLOTS;
+			long t = slotTime(elapsed, level, slot & SLOT_MASK);
+			if (t > now)
+				break;
+			elapsed = t;
+			if (level == 0) {
+				job = heads[slot];
+				unlink(job);
+				return job;
+			}
+			cascade(slot);
+		}
+		return null;
+	}
+
+	/** Cascade all jobs in a slot down to lower levels */
+	private void cascade(int slot) {
+		Job job = heads[slot];
+		while (job != null) {
+			Job next = job.wheel_next;
+			unlink(job);
+			link(job, slotNumber(job.getDeadline()));
+			n_jobs++;
+			job = next;
+		}
+	}
+
+	/** Get the time the first job is due.  For jobs on higher levels,
+	 * this is the start time of the slot.
+	 * @return Time (ms) when the first job could be due, Long.MIN_VALUE
+	 *         if a job was added after its due time, or Long.MAX_VALUE
+	 *         if the wheel is empty. */
+	@Override
+	public long firstTime() {
+		if (heads[EXPIRED] != null)
+			return Long.MIN_VALUE;
+		int slot = firstSlot();
+		return (slot != NONE)
+		      ? slotTime(elapsed, slot / SLOTS, slot & SLOT_MASK)
+		      : Long.MAX_VALUE;
+	}
+
+	/** Get the number of jobs in the wheel */
+	@Override
+	public int size() {
+		return n_jobs;
+	}
+
+	/** Check if the wheel is empty */
+	@Override
+	public boolean isEmpty() {
+		return n_jobs == 0;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Job queue backed by a sorted tree.  Jobs are ordered by their Comparable
+ * implementation.  Adding or removing a job is O(log n).
+ *
+ * @author Douglas Lau
+ */
+public final class TreeJobQueue implements JobQueue {
+
+	/** Set of jobs */
+	private final TreeSet<Job> jobs = new TreeSet<Job>();
+
+	/** Add a job to the queue */
+	@Override
+	public void add(Job job) {
+		jobs.add(job);
+	}
+
+	/** Remove a job from the queue */
+	@Override
+	public boolean remove(Job job) {
+		return jobs.remove(job);
+	}
+
+	/** Remove all jobs from the queue */
+	@Override
+	public void drainTo(Collection<Job> c) {
+		c.addAll(jobs);
+		jobs.clear();
+	}
+
+	/** Remove the first job which is due */
+	@Override
+	public Job poll(long now) {
+		if (!jobs.isEmpty() && jobs.first().getDeadline() <= now)
+			return jobs.pollFirst();
+		else
+			return null;
+	}
+
+	/** Get the time the first job is due */
+	@Override
+	public long firstTime() {
+		return jobs.isEmpty()
+		      ? Long.MAX_VALUE
+		      : jobs.first().getDeadline();
+	}
+
+	/** Get the number of jobs in the queue */
+	@Override
+	public int size() {
+		return jobs.size();
+	}
+
+	/** Check if the queue is empty */
+	@Override
+	public boolean isEmpty() {
+		return jobs.isEmpty();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Work for a Worker to perform.
+ *
+ * @author Douglas Lau
+ */
+abstract public class Work implements Comparable<Work> {
+
+	/** Next available work identifier */
+	static private final AtomicLong next_id = new AtomicLong();
+
+	/** Unique work identifier */
+	private final long id = next_id.getAndIncrement();
+
+	/** Flag to indicate work complete */
+	private boolean is_complete = false;
+
+	/** Future completed with this work (or exception) when complete */
+	private final CompletableFuture<Work> future =
+		new CompletableFuture<Work>();
+
+	/** Time work was added to a worker or queue (nanoTime, 0 if
+	 * unknown) */
+	long enqueued = 0;
+
+	/** Create Work */
+	public Work() { }
+
+	/** Perform the work */
+	final void performWork() throws Exception {
+		Exception ex = null;
+		try {
+			perform();
+		}
+		catch (Exception e) {
+			ex = e;
+			throw e;
+		}
+		finally {
+			complete();
+			setComplete(ex);
+		}
+	}
+
+	/** Perform the work for a worker (or worker pool).  Exceptions are
+	 * handled, and task metrics are recorded.
+	 * @param h Exception handler.
+	 * @param m Task metrics (null if not enabled). */
+	final void performWork(ExceptionHandler h, TaskMetrics m) {
+		long start = (m != null) ? System.nanoTime() : 0;
+		Exception ex = null;
+		try {
+			performWork();
+		}
+		catch (Exception e) {
+			h.handle(e);
+			ex = e;
+		}
+		catch (VirtualMachineError e) {
+			System.err.println("VIRTUAL MACHINE ERROR");
+			e.printStackTrace();
+			System.err.println("FATAL: RESTARTING");
+			System.exit(1);
+		}
+		if (m != null && enqueued != 0) {
+			long late = start - enqueued;
+			long run = System.nanoTime() - start;
+			m.record(getName(), late / 1000, run / 1000,
+				ex != null);
+		}
+	}
+
+	/** Do this upon completion of the work */
+	protected void complete() { }
+
+	/** Set the complete flag and complete the future.  Dependent stages
+	 * which are not "async" run on the thread which performed the work.
+	 * @param ex Exception thrown by perform, or null. */
+	private void setComplete(Throwable ex) {
+		synchronized (this) {
+			is_complete = true;
+			notifyAll();
+		}
+		if (ex != null)
+			future.completeExceptionally(ex);
+		else
+			future.complete(this);
+	}
+
+	/** Shed the work without performing it, because a queue was full.
+	 * The future is cancelled, and waiting threads are notified. */
+	final void shed() {
+		synchronized (this) {
+			is_complete = true;
+			notifyAll();
+		}
+		future.cancel(false);
+	}
+
+	/** Complete this work along with another pending work, which it was
+	 * coalesced into.  This work is never performed itself.
+	 * @param w Surviving work. */
+	final void follow(Work w) {
+		w.future.whenComplete(new BiConsumer<Work, Throwable>() {
+			public void accept(Work r, Throwable ex) {
+				if (ex instanceof CancellationException)
+					shed();
+				else
+					setComplete(ex);
+			}
+		});
+	}
+
+	/** Get a future which is completed with this work (or the exception
+	 * thrown by perform) when the work is complete. */
+	@SuppressWarnings("unchecked")
+	final <W extends Work> CompletableFuture<W> getFuture() {
+		return (CompletableFuture<W>) (CompletableFuture<?>) future;
+	}
+
+	/** Actual "work" to be performed */
+	abstract protected void perform() throws Exception;
+
+	/** Get the serialization key of the work.  When a worker performs
+	 * work with an executor, work with equal keys is performed one at a
+	 * time, in order.
+	 * @return Key object, or null for no serialization. */
+	public Object getKey() {
+		return null;
+	}
+
+	/** Get the coalescing key of the work.  When a worker has coalescing
+	 * enabled, adding work with the same key as pending work (not yet
+	 * started) merges it into the pending work instead of queueing it.
+	 * @return Key object, or null for no coalescing. */
+	public Object getCoalesceKey() {
+		return null;
+	}
+
+	/** Merge a duplicate into this pending work.  The duplicate is
+	 * completed when this work is complete.  This is called with a lock
+	 * held, so it must not add work or block.
+	 * @param w Duplicate work with the same coalescing key. */
+	protected void coalesce(Work w) { }
+
+	/** Get the priority of the work.  A LaneWorkQueue performs work in
+	 * separate lanes by priority.
+	 * @return Work priority. */
+	public WorkPriority getPriority() {
+		return WorkPriority.NORMAL;
+	}
+
+	/** Get the name of the work */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+
+	/** Compare this work with another one */
+	@Override
+	public int compareTo(Work other) {
+		return Long.signum(id - other.id);
+	}
+
+	/** Wait for the work to be completed.  The waiting thread is
+	 * notified as soon as the work is complete.
+	 * @param ms Time to wait before giving up.
+	 * @throws TimeoutExcepiton if timeout expires before completion. */
+	public synchronized final void waitForCompletion(long ms)
+		throws TimeoutException
+	{
+		long end = TimeSteward.monotonicMillis() + ms;
+		while (!is_complete) {
+			long w = end - TimeSteward.monotonicMillis();
+			if (w <= 0)
+				throw new TimeoutException();
+			try {
+				TimeSteward.wait(this, w);
+			}
+			catch (InterruptedException e) {
+				// keep waiting
+			}
+		}
+	}
+}
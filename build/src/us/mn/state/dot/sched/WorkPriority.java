@@ -0,0 +1,39 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * Priority classes for work.  A LaneWorkQueue keeps a separate lane for each
+ * priority, and dispatches from the lanes by weighted round-robin.  In each
+ * round, up to "weight" items are taken from each lane, starting with the
+ * highest priority.  While all lanes are backlogged, a lane gets its weight
+ * out of every 15 items performed, so low priority work is never starved.
+ *
+ * @author Douglas Lau
+ */
+public enum WorkPriority {
+	URGENT(8),	/* operator commands */
+	HIGH(4),	/* interactive requests */
+	NORMAL(2),	/* default */
+	LOW(1);		/* routine polling */
+
+	/** Maximum number of items taken from the lane per round */
+	public final int weight;
+
+	/** Create a work priority */
+	private WorkPriority(int w) {
+		weight = w;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * A worker pool performs work on a fixed pool of threads.  Work with equal
+ * keys (see Work.getKey) is performed one at a time, in the order it was
+ * added, so one pool can replace many single-thread Workers (such as one per
+ * comm link).  Work with different keys (or a null key) is performed in
+ * parallel.  The threads belong to a ForkJoinPool in FIFO mode, so idle
+ * threads steal work from busy ones.
+ *
+ * Work which is not started before the pool is disposed (or which is added
+ * after) is shed; it is never performed, and its future is cancelled.
+ *
+ * @author Douglas Lau
+ */
+public final class WorkerPool {
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Handle an exception */
+	private void handleException(Exception e) {
+		handler.handle(e);
+	}
+
+	/** Name of worker pool */
+	private final String name;
+
+	/** Pool of threads */
+	private final ForkJoinPool pool;
+
+	/** Keyed executor for serializing work */
+	private final KeyedExecutor executor;
+
+	/** Count of work added but not yet started */
+	private final AtomicInteger n_work = new AtomicInteger();
+
+	/** Work added but not yet started (or shed) */
+	private final Set<Work> pending = ConcurrentHashMap.newKeySet();
+
+	/** Task metrics (null if not enabled) */
+	private volatile TaskMetrics metrics;
+
+	/** Create a worker pool with one thread per processor */
+	public WorkerPool(String name, ExceptionHandler h) {
+		this(name, h, Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Create a worker pool.
+	 * @param name Name of worker pool (and thread name prefix).
+	 * @param h Exception handler.
+	 * @param n_threads Number of threads for performing work. */
+	public WorkerPool(final String name, ExceptionHandler h,
+		int n_threads)
+	{
+		if (n_threads < 1)
+			throw new IllegalArgumentException("n_threads");
+		this.name = name;
+		handler = h;
+		pool = new ForkJoinPool(n_threads,
+			new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				public ForkJoinWorkerThread newThread(
+					ForkJoinPool p)
+				{
+					ForkJoinWorkerThread t =
+						new ForkJoinWorkerThread(p) { };
+					t.setName(name + "-" +
+						t.getPoolIndex());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, true);
+		executor = new KeyedExecutor(pool);
+	}
+
+	/** Add work to perform.  Adding work which is already pending (not
+	 * started yet) has no effect.
+	 * @param w Work to perform.
+	 * @return Future which is completed with the work (or the exception
+	 *         it threw) as soon as it has been performed. */
+	public <W extends Work> CompletableFuture<W> addWork(final W w) {
+		// Work added after disposal is never performed
+		if (pool.isShutdown()) {
+			w.shed();
+			return w.getFuture();
+		}
+		// Work which is already pending is not added again
+		if (!pending.add(w))
+			return w.getFuture();
+		if (metrics != null)
+			w.enqueued = System.nanoTime();
+		n_work.incrementAndGet();
+		executor.execute(w.getKey(), new Runnable() {
+			public void run() {
+				// Work was shed if not pending
+				if (!unpend(w))
+					return;
+				// A rejected task is run by the caller
+				if (pool.isShutdown())
+					w.shed();
+				else
+					w.performWork(handler, metrics);
+			}
+		});
+		return w.getFuture();
+	}
+
+	/** Remove work from the pending set (when started or shed).
+	 * @return true if the work was pending. */
+	private boolean unpend(Work w) {
+		if (pending.remove(w)) {
+			// Decrement before the future completes
+			n_work.decrementAndGet();
+			return true;
+		} else
+			return false;
+	}
+
+	/** Test if the current thread is a thread in this pool */
+	public boolean isCurrentThread() {
+		Thread t = Thread.currentThread();
+		return (t instanceof ForkJoinWorkerThread) &&
+		       ((ForkJoinWorkerThread) t).getPool() == pool;
+	}
+
+	/** Enable task metrics, and publish them as JMX MBeans.  Lateness of
+	 * work is the time it waited to be performed. */
+	public synchronized void enableMetrics() {
+		if (null == metrics) {
+			metrics = new TaskMetrics("WorkerPool", name,
+				new IntSupplier() {
+					public int getAsInt() {
+						return size();
+					}
+				}, null,
+				new ExceptionHandler() {
+					public boolean handle(Exception e) {
+						handleException(e);
+						return true;
+					}
+				});
+		}
+	}
+
+	/** Get the task metrics (null if not enabled) */
+	public TaskMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Dispose of the worker pool.  Work which has not been started is
+	 * shed. */
+	public void dispose() {
+		TaskMetrics m = metrics;
+		if (m != null)
+			m.unregister();
+		// ForkJoinPool drops queued tasks without returning them
+		pool.shutdownNow();
+		for (Work w: pending) {
+			if (unpend(w))
+				w.shed();
+		}
+	}
+
+	/** Get the count of work which has not been started */
+	public int size() {
+		return n_work.get();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for DebugLog.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DebugLogBenchmark {
+
+	/** Is the log file enabled? */
+	@Param({ "false", "true" })
+	public boolean enabled;
+
+	/** Temporary directory for log file */
+	private File dir;
+
+	/** Debug log to test */
+	private DebugLog log;
+
+	/** Create the debug log */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("debuglog").toFile();
+		DebugLog.init(dir, "bench");
+		log = new DebugLog("bench.log");
+		if (enabled)
+			log.getFile().createNewFile();
+	}
+
+	/** Remove the log file */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		log.getFile().delete();
+		dir.delete();
+	}
+
+	/** Check if the log is open */
+	@Benchmark
+	public boolean isOpen() {
+		return log.isOpen();
+	}
+
+	/** Log a message */
+	@Benchmark
+	public void logMessage() {
+		log.log("Starting NopJob");
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for Scheduler.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SchedulerBenchmark {
+
+	/** Job which does nothing */
+	static private final class NopJob extends Job {
+		private NopJob(int ms) {
+			super(ms);
+		}
+		public void perform() { }
+	}
+
+	/** Number of jobs waiting in the queue */
+	@Param({ "1000", "100000" })
+	public int size;
+
+	/** Job queue type */
+	@Param({ "tree", "wheel" })
+	public String queue;
+
+	/** Scheduler to test */
+	private Scheduler scheduler;
+
+	/** Create the scheduler, with jobs waiting one hour out */
+	@Setup(Level.Trial)
+	public void setup() {
+		JobQueue q = "wheel".equals(queue)
+		           ? new TimingWheel()
+		           : new TreeJobQueue();
+		scheduler = new Scheduler("bench", null, 1, q);
+		for (int i = 0; i < size; i++)
+			scheduler.addJob(new NopJob(3600 * 1000 + i));
+	}
+
+	/** Dispose of the scheduler */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		scheduler.dispose();
+	}
+
+	/** Add a job and remove it again */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Job addRemoveJob() {
+		Job job = new NopJob(1);
+		scheduler.addJob(job);
+		scheduler.removeJob(job);
+		return job;
+	}
+
+	/** Add an immediate job and wait until it has been performed */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Job dispatchImmediate() throws Exception {
+		return scheduler.addJob(new NopJob(0)).getFuture().get();
+	}
+
+	/** Add a job due in 1 ms and wait until it has been performed.  The
+	 * dispatch lateness is the sampled time minus 1 ms. */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Job dispatchDelayed() throws Exception {
+		return scheduler.addJob(new NopJob(1)).getFuture().get();
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing time sources, read through TimeSteward.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeSourceBenchmark {
+
+	/** Time source type */
+	@Param({ "system", "cached" })
+	public String source;
+
+	/** Cached time source (if used) */
+	private CachedTimeSource cached;
+
+	/** Install the time source */
+	@Setup(Level.Trial)
+	public void setup() {
+		if ("cached".equals(source)) {
+			cached = new CachedTimeSource(1);
+			TimeSteward.setTimeSource(cached);
+		} else
+			TimeSteward.setTimeSource(new SystemTimeSource());
+	}
+
+	/** Restore the system time source */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (cached != null)
+			cached.stop();
+		TimeSteward.setTimeSource(new SystemTimeSource());
+	}
+
+	@Benchmark
+	public long currentTimeMillis() {
+		return TimeSteward.currentTimeMillis();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long currentTimeMillisContended() {
+		return TimeSteward.currentTimeMillis();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for TimeSteward.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeStewardBenchmark {
+
+	/** Time to format */
+	private long time = TimeSteward.currentTimeMillis();
+
+	@Benchmark
+	public long currentTimeMillis() {
+		return TimeSteward.currentTimeMillis();
+	}
+
+	@Benchmark
+	public String currentDateTimeString() {
+		return TimeSteward.currentDateTimeString(true);
+	}
+
+	@Benchmark
+	public String currentDateTimeStringUTC() {
+		return TimeSteward.currentDateTimeString(false);
+	}
+
+	@Benchmark
+	public String dateShortString() {
+		return TimeSteward.dateShortString(time);
+	}
+
+	@Benchmark
+	public String timeShortString() {
+		return TimeSteward.timeShortString(time);
+	}
+
+	@Benchmark
+	public int currentMinuteOfDayInt() {
+		return TimeSteward.currentMinuteOfDayInt();
+	}
+
+	@Benchmark
+	public int secondOfDayInt() {
+		return TimeSteward.secondOfDayInt(time);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for Worker and Work.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WorkerBenchmark {
+
+	/** Number of work items added before waiting for the worker */
+	static private final int BATCH = 1024;
+
+	/** Exception handler */
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			e.printStackTrace();
+			return true;
+		}
+	};
+
+	/** Work which does nothing */
+	static private final class NopWork extends Work {
+		protected void perform() { }
+	}
+
+	/** Work queue type */
+	@Param({ "locked", "mpsc" })
+	public String queue;
+
+	/** Worker to test */
+	private Worker worker;
+
+	/** Create the worker */
+	@Setup(Level.Trial)
+	public void setup() {
+		WorkQueue q = "mpsc".equals(queue)
+		            ? new MpscWorkQueue()
+		            : new LockedWorkQueue();
+		worker = new Worker("bench", HANDLER, q);
+	}
+
+	/** Dispose of the worker */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		worker.dispose();
+	}
+
+	/** Producer state (per thread) */
+	@State(Scope.Thread)
+	public static class Producer {
+		private int n_added = 0;
+	}
+
+	/** Add work from many threads.  Each thread waits for the worker
+	 * after every batch, so the queue does not grow without bound. */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Threads(8)
+	public void addWork(Producer p) throws Exception {
+		CompletableFuture<NopWork> f = worker.addWork(new NopWork());
+		if (++p.n_added % BATCH == 0)
+			f.get();
+	}
+
+	/** Add work and wait until it has been completed */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Work waitForCompletion() throws Exception {
+		Work w = new NopWork();
+		worker.addWork(w);
+		w.waitForCompletion(10000);
+		return w;
+	}
+}
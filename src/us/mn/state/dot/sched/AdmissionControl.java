@@ -0,0 +1,163 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission control limits the number of tasks in a queue.  The capacity is
+ * approximate, since the queue size is checked before adding a task, without
+ * holding the queue lock.  Counts are kept of shed tasks (rejected or
+ * dropped) and producers which were blocked.
+ *
+ * A blocked producer never holds this lock while checking the queue size,
+ * so the consumer can release capacity while holding the queue lock.
+ *
+ * @author Douglas Lau
+ */
+final class AdmissionControl {
+
+	/** Queue size supplier */
+	private final IntSupplier size;
+
+	/** Maximum number of tasks */
+	private volatile int capacity = Integer.MAX_VALUE;
+
+	/** Policy when queue is full */
+	private volatile OverflowPolicy policy = OverflowPolicy.BLOCK;
+
+	/** Maximum time to block producers (ms) */
+	private volatile long timeout = 0;
+
+	/** Count of shed tasks */
+	private final AtomicLong shed = new AtomicLong();
+
+	/** Count of blocked producers */
+	private final AtomicLong blocked = new AtomicLong();
+
+	/** Count of released tasks (to avoid lost wake-ups) */
+	private final AtomicLong releases = new AtomicLong();
+
+	/** Number of blocked producers waiting */
+	private volatile int n_waiting = 0;
+
+	/** Create admission control.
+	 * @param s Queue size supplier. */
+	AdmissionControl(IntSupplier s) {
+		size = s;
+	}
+
+	/** Set the capacity.
+	 * @param cap Maximum number of tasks.
+	 * @param p Policy when queue is full.
+	 * @param ms Maximum time to block producers (BLOCK policy). */
+	synchronized void setCapacity(int cap, OverflowPolicy p, long ms) {
+		if (cap < 1)
+			throw new IllegalArgumentException("capacity");
+		if (ms < 0)
+			throw new IllegalArgumentException("timeout");
+		capacity = cap;
+		policy = p;
+		timeout = ms;
+		notifyAll();
+	}
+
+	/** Get the overflow policy */
+	OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/** Admit a new task.
+	 * @param wait True to allow blocking (with BLOCK policy).
+	 * @return true if the task can be added, false if it must be shed. */
+	boolean admit(boolean wait) {
+		if (size.getAsInt() < capacity)
+			return true;
+		OverflowPolicy p = policy;
+		if (OverflowPolicy.DROP_OLDEST == p)
+			return true;
+		if (OverflowPolicy.BLOCK == p && wait && waitCapacity())
+			return true;
+		shed.incrementAndGet();
+		return false;
+	}
+
+	/** Wait for capacity in the queue.
+	 * @return true if there is capacity, false on timeout. */
+	private boolean waitCapacity() {
+		blocked.incrementAndGet();
+		long end = TimeSteward.monotonicMillis() + timeout;
+		synchronized (this) {
+			n_waiting++;
+		}
+		try {
+			while (true) {
+				long r = releases.get();
+				if (size.getAsInt() < capacity)
+					return true;
+				long ms = end - TimeSteward.monotonicMillis();
+				if (ms <= 0)
+					return false;
+				synchronized (this) {
+					if (releases.get() == r)
+						TimeSteward.wait(this, ms);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			synchronized (this) {
+				n_waiting--;
+			}
+		}
+	}
+
+	/** Release capacity after a task was removed from the queue */
+	void release() {
+		releases.incrementAndGet();
+		if (n_waiting > 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/** Check if the oldest task must be dropped to add a new task
+	 * (DROP_OLDEST policy).
+	 * @return true if the queue is full. */
+	boolean dropOldest() {
+		return OverflowPolicy.DROP_OLDEST == policy &&
+		       size.getAsInt() >= capacity;
+	}
+
+	/** Count a task which was dropped */
+	void dropped() {
+		shed.incrementAndGet();
+	}
+
+	/** Get the count of shed tasks */
+	long getShedCount() {
+		return shed.get();
+	}
+
+	/** Get the count of blocked producers */
+	long getBlockedCount() {
+		return blocked.get();
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * A cron schedule performs a job at times matching a cron expression, in the
+ * local time zone.  An expression has 5 fields (minute, hour, day-of-month,
+ * month, day-of-week) or 6 fields (with seconds first).  Each field can be
+ * "*", a value, a range "a-b", a step "*&#47;n" or "a-b/n", or a
+ * comma-separated list of those.  Months and days-of-week can also be
+ * names (JAN-DEC, SUN-SAT), and day-of-week 7 is Sunday.  When both
+ * day-of-month and day-of-week are restricted, a day matching either one
+ * matches (as in Vixie cron).  If either of them starts with "*" (such as
+ * "*&#47;2"), a day must match both.
+ *
+ * Examples: "0,30 * 6-9,15-18 * * MON-FRI" (weekday peaks every 30 seconds),
+ * "0 *&#47;5 0-5 * * *" (every 5 minutes at night).
+ *
+ * The expression is compiled once into bitsets, one per field.  Finding the
+ * next time is a few bit scans on those sets, which skip whole months, days,
+ * hours or minutes at a time.  A local time in a DST gap is moved forward by
+ * the length of the gap.
+ *
+ * @author Douglas Lau
+ */
+public final class CronSchedule implements Schedule {
+
+	/** Month names */
+	static private final String[] MONTHS = {
+		"JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+		"JUL", "AUG", "SEP", "OCT", "NOV", "DEC",
+	};
+
+	/** Day-of-week names */
+	static private final String[] DAYS = {
+		"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT",
+	};
+
+	/** Maximum length of each month (days) */
+	static private final int[] MAX_DAYS = {
+		31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31,
+	};
+
+	/** Bits for every 7th day, starting with day 1 */
+	static private final long EVERY_7 =
+		(1L << 1) | (1L << 8) | (1L << 15) | (1L << 22) | (1L << 29) |
+		(1L << 36);
+
+	/** Maximum number of years to search (enough for Feb 29) */
+	static private final int MAX_YEARS = 10;
+
+	/** Parse one value of a field */
+	static private int parseValue(String v, String[] names, int base) {
+		if (names != null) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equalsIgnoreCase(v))
+					return base + i;
+			}
+		}
+		try {
+			return Integer.parseInt(v);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value: " +
+				v);
+		}
+	}
+
+	/** Parse a field into a bitset.
+	 * @param f Field to parse.
+	 * @param min Minimum value.
+	 * @param max Maximum value.
+	 * @param names Value names (or null).
+	 * @param base Value of first name.
+	 * @return Bitset of matching values. */
+	static private long parseField(String f, int min, int max,
+		String[] names, int base)
+	{
+		long bits = 0;
+		for (String part: f.split(",")) {
+			int step = 1;
+			int s = part.indexOf('/');
+			if (s >= 0) {
+				step = parseValue(part.substring(s + 1), null,
+					0);
+				part = part.substring(0, s);
+			}
+			int lo, hi;
+			int d = part.indexOf('-');
+			if ("*".equals(part) || "?".equals(part)) {
+				lo = min;
+				hi = max;
+			} else if (d > 0) {
+				lo = parseValue(part.substring(0, d), names,
+					base);
+				hi = parseValue(part.substring(d + 1), names,
+					base);
+			} else {
+				lo = parseValue(part, names, base);
+				hi = (s >= 0) ? max : lo;
+			}
+			if (lo < min || hi > max || lo > hi || step < 1) {
+				throw new IllegalArgumentException(
+					"Invalid field: " + f);
+			}
+			for (int v = lo; v <= hi; v += step)
+				bits |= 1L << v;
+		}
+		return bits;
+	}
+
+	/** Find the next set bit at or after a position.
+	 * @return Bit position, or -1 if none is set. */
+	static private int nextBit(long bits, int from) {
+		if (from > 63)
+			return -1;
+		long b = bits & (-1L << from);
+		return (b != 0) ? Long.numberOfTrailingZeros(b) : -1;
+	}
+
+	/** Check if a field starts with "*" (or is "?") */
+	static private boolean isStar(String f) {
+		return f.startsWith("*") || f.equals("?");
+	}
+
+	/** Cron expression */
+	private final String expr;
+
+	/** Second bits (0-59) */
+	private final long seconds;
+
+	/** Minute bits (0-59) */
+	private final long minutes;
+
+	/** Hour bits (0-23) */
+	private final long hours;
+
+	/** Day-of-month bits (1-31) */
+	private final long days;
+
+	/** Month bits (1-12) */
+	private final long months;
+
+	/** Day-of-week bits (0-6, Sunday is 0) */
+	private final long weekdays;
+
+	/** Flag to match either day-of-month or day-of-week, instead of
+	 * both (when neither field starts with "*") */
+	private final boolean either_day;
+
+	/** Create a new cron schedule.
+	 * @param e Cron expression.
+	 * @throws IllegalArgumentException if the expression is invalid, or
+	 *         never matches any time. */
+	public CronSchedule(String e) {
+		expr = e;
+		String[] f = e.trim().split("\\s+");
+		if (f.length != 5 && f.length != 6) {
+			throw new IllegalArgumentException(
+				"Invalid cron expression: " + e);
+		}
+		int i = f.length - 5;
+		seconds = (i > 0) ? parseField(f[0], 0, 59, null, 0) : 1L;
+		minutes = parseField(f[i], 0, 59, null, 0);
+		hours = parseField(f[i + 1], 0, 23, null, 0);
+		days = parseField(f[i + 2], 1, 31, null, 0);
+		months = parseField(f[i + 3], 1, 12, MONTHS, 1);
+		long wd = parseField(f[i + 4], 0, 7, DAYS, 0);
+		weekdays = (wd | (wd >>> 7)) & 0x7F;
+		either_day = !isStar(f[i + 2]) && !isStar(f[i + 4]);
+		if (!isPossible()) {
+			throw new IllegalArgumentException(
+				"Cron expression never matches: " + e);
+		}
+	}
+
+	/** Check if any day can match */
+	private boolean isPossible() {
+		if (either_day)
+			return true;
+		for (int m = 1; m <= 12; m++) {
+			if ((months & (1L << m)) != 0 &&
+			    nextBit(days, 1) <= MAX_DAYS[m - 1])
+				return true;
+		}
+		return false;
+	}
+
+	/** Get the matching days of a month.
+	 * @return Bitset of matching days (1-31). */
+	private long dayBits(int year, int month) {
+		LocalDate first = LocalDate.of(year, month, 1);
+		long len = (1L << (first.lengthOfMonth() + 1)) - 2;
+		long wd = 0;
+		int w1 = first.getDayOfWeek().getValue() % 7;
+		for (int w = nextBit(weekdays, 0); w >= 0;
+		     w = nextBit(weekdays, w + 1))
+		{
+			wd |= EVERY_7 << ((w - w1 + 7) % 7);
+		}
+		return (either_day ? (days | wd) : (days & wd)) & len;
+	}
+
+	/** Compute the next scheduled time.
+	 * @param t Current time.
+	 * @return Earliest scheduled time after t, or Long.MAX_VALUE if none
+	 *         is found. */
+	@Override
+	public long computeNextTime(long t) {
+		ZoneId z = TimeSteward.localZone();
+		ZoneOffset zo = z.getRules().getOffset(Instant.ofEpochMilli(t));
+		LocalDateTime ldt = LocalDateTime.ofEpochSecond(
+			Math.floorDiv(t, 1000) + 1, 0, zo);
+		int year = ldt.getYear();
+		int month = ldt.getMonthValue();
+		int day = ldt.getDayOfMonth();
+		int hour = ldt.getHour();
+		int minute = ldt.getMinute();
+		int second = ldt.getSecond();
+		int max_year = year + MAX_YEARS;
+		while (year <= max_year) {
+			int v = nextBit(months, month);
+			if (v < 0) {
+				year++;
+				month = 1;
+				day = 1;
+				hour = minute = second = 0;
+				continue;
+			}
+			if (v != month) {
+				month = v;
+				day = 1;
+				hour = minute = second = 0;
+			}
+			v = nextBit(dayBits(year, month), day);
+			if (v < 0) {
+				month++;
+				day = 1;
+				hour = minute = second = 0;
+				continue;
+			}
+			if (v != day) {
+				day = v;
+				hour = minute = second = 0;
+			}
+			v = nextBit(hours, hour);
+			if (v < 0) {
+				day++;
+				hour = minute = second = 0;
+				continue;
+			}
+			if (v != hour) {
+				hour = v;
+				minute = second = 0;
+			}
+			v = nextBit(minutes, minute);
+			if (v < 0) {
+				hour++;
+				minute = second = 0;
+				continue;
+			}
+			if (v != minute) {
+				minute = v;
+				second = 0;
+			}
+			v = nextBit(seconds, second);
+			if (v < 0) {
+				minute++;
+				second = 0;
+				continue;
+			}
+			second = v;
+			long ms = ZonedDateTime.ofLocal(LocalDateTime.of(year,
+				month, day, hour, minute, second), z, zo)
+				.toInstant().toEpochMilli();
+			if (ms > t)
+				return ms;
+			second++;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/** Compute the next scheduled times.
+	 * @param t Current time.
+	 * @param k Number of times to compute.
+	 * @return Array of the next k scheduled times after t. */
+	public long[] computeNextTimes(long t, int k) {
+		long[] times = new long[k];
+		for (int i = 0; i < k; i++) {
+			t = computeNextTime(t);
+			times[i] = t;
+		}
+		return times;
+	}
+
+	/** Get the cron expression */
+	@Override
+	public String toString() {
+		return expr;
+	}
+}
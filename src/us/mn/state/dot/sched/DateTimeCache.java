@@ -0,0 +1,239 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.TimeZone;
+
+/**
+ * Cache for formatting dates and times in one time zone.  A "segment" is a
+ * span of time within one local day with a constant UTC offset.  Segments
+ * are computed from java.time zone rules, so they end at both midnight and
+ * DST transitions.  Within a segment, the time of day is simple arithmetic,
+ * and the date strings are pre-rendered.  The most recently rendered
+ * date/time and time strings are also cached, so most calls in the same
+ * second return the same string without allocating.
+ *
+ * For local time, the default time zone is checked at most once per second
+ * (of TimeSteward time), in case it is changed.  It is also checked whenever
+ * the time source is changed.
+ *
+ * @author Douglas Lau
+ */
+final class DateTimeCache {
+
+	/** Milliseconds per day */
+	static private final long DAY_MS = 24 * 3600 * 1000;
+
+	/** Nanoseconds between checks of the default time zone */
+	static private final long ZONE_CHECK_NS = 1000000000L;
+
+	/** Append a two-digit number */
+	static private void append2(StringBuilder sb, int v) {
+		sb.append((char) ('0' + v / 10));
+		sb.append((char) ('0' + v % 10));
+	}
+
+	/** Render a time of day as HH:mm:ss */
+	static private void appendTime(StringBuilder sb, int sod) {
+		append2(sb, sod / 3600);
+		sb.append(':');
+		append2(sb, sod / 60 % 60);
+		sb.append(':');
+		append2(sb, sod % 60);
+	}
+
+	/** Span of time within one day with a constant offset */
+	static private final class Segment {
+		private final ZoneId zone;
+		private final long start;
+		private final long end;
+		private final long offset;
+		private final String date;
+		private final String date_short;
+
+		private Segment(ZoneId z, long t) {
+			zone = z;
+			ZoneRules rules = z.getRules();
+			Instant i = Instant.ofEpochMilli(t);
+			ZoneOffset off = rules.getOffset(i);
+			LocalDate ld = i.atOffset(off).toLocalDate();
+			long s = ld.atStartOfDay(z).toInstant().toEpochMilli();
+			long e = ld.plusDays(1).atStartOfDay(z).toInstant()
+				.toEpochMilli();
+			ZoneOffsetTransition pt = rules.previousTransition(
+				Instant.ofEpochMilli(t + 1));
+			if (pt != null)
+				s = Math.max(s, pt.getInstant().toEpochMilli());
+			ZoneOffsetTransition nt = rules.nextTransition(i);
+			if (nt != null)
+				e = Math.min(e, nt.getInstant().toEpochMilli());
+			start = s;
+			end = e;
+			offset = off.getTotalSeconds() * 1000L;
+			StringBuilder sb = new StringBuilder(10);
+			int y = ld.getYear();
+			for (int d = 1000; d > 1 && y < d; d /= 10)
+				sb.append('0');
+			sb.append(y);
+			sb.append('-');
+			append2(sb, ld.getMonthValue());
+			sb.append('-');
+			append2(sb, ld.getDayOfMonth());
+			date = sb.toString();
+			date_short = date.replace("-", "");
+		}
+
+		/** Check if the segment contains a time */
+		private boolean contains(long t) {
+			return t >= start && t < end;
+		}
+
+		/** Get the local second-of-day */
+		private int secondOfDay(long t) {
+			return (int) (Math.floorMod(t + offset, DAY_MS) / 1000);
+		}
+	}
+
+	/** Cached string for one second */
+	static private final class Rendered {
+		private final Segment seg;
+		private final long second;
+		private final String value;
+		private Rendered(Segment sg, long s, String v) {
+			seg = sg;
+			second = s;
+			value = v;
+		}
+	}
+
+	/** Flag for local time zone (false for UTC) */
+	private final boolean local;
+
+	/** Current zone */
+	private volatile ZoneId zone;
+
+	/** Time zone last checked (TimeSteward nanoTime) */
+	private volatile long zone_checked;
+
+	/** Current segment */
+	private volatile Segment segment;
+
+	/** Last rendered date/time string */
+	private volatile Rendered date_time;
+
+	/** Last rendered time string */
+	private volatile Rendered time;
+
+	/** Create a date/time cache.
+	 * @param l True for local time, false for UTC. */
+	DateTimeCache(boolean l) {
+		local = l;
+		checkZone();
+	}
+
+	/** Look up the zone */
+	private ZoneId lookupZone() {
+		return local
+		      ? TimeZone.getDefault().toZoneId()
+		      : ZoneOffset.UTC;
+	}
+
+	/** Check the zone now */
+	void checkZone() {
+		zone_checked = TimeSteward.nanoTime();
+		ZoneId z = lookupZone();
+		if (!z.equals(zone))
+			zone = z;
+	}
+
+	/** Get the current zone, checking the default periodically */
+	private ZoneId currentZone() {
+		if (local) {
+			long now = TimeSteward.nanoTime();
+			if (now - zone_checked > ZONE_CHECK_NS)
+				checkZone();
+		}
+		return zone;
+	}
+
+	/** Get the segment containing a time */
+	private Segment segment(long t) {
+		ZoneId z = currentZone();
+		Segment sg = segment;
+		if (sg != null && sg.zone == z && sg.contains(t))
+			return sg;
+		sg = new Segment(z, t);
+		// Only cache the segment containing the current time
+		if (sg.contains(TimeSteward.currentTimeMillis()))
+			segment = sg;
+		return sg;
+	}
+
+	/** Get the current zone */
+	ZoneId getZone() {
+		return currentZone();
+	}
+
+	/** Get the UTC offset (ms) */
+	long offset(long t) {
+		return segment(t).offset;
+	}
+
+	/** Get the second-of-day */
+	int secondOfDay(long t) {
+		return segment(t).secondOfDay(t);
+	}
+
+	/** Get the date as yyyyMMdd */
+	String dateShort(long t) {
+		return segment(t).date_short;
+	}
+
+	/** Get the date and time as yyyy-MM-dd HH:mm:ss */
+	String dateTime(long t) {
+		Segment sg = segment(t);
+		long s = Math.floorDiv(t, 1000);
+		Rendered r = date_time;
+		if (r != null && r.seg == sg && r.second == s)
+			return r.value;
+		StringBuilder sb = new StringBuilder(19);
+		sb.append(sg.date);
+		sb.append(' ');
+		appendTime(sb, sg.secondOfDay(t));
+		r = new Rendered(sg, s, sb.toString());
+		date_time = r;
+		return r.value;
+	}
+
+	/** Get the time as HH:mm:ss */
+	String time(long t) {
+		Segment sg = segment(t);
+		long s = Math.floorDiv(t, 1000);
+		Rendered r = time;
+		if (r != null && r.seg == sg && r.second == s)
+			return r.value;
+		StringBuilder sb = new StringBuilder(8);
+		appendTime(sb, sg.secondOfDay(t));
+		r = new Rendered(sg, s, sb.toString());
+		time = r;
+		return r.value;
+	}
+}
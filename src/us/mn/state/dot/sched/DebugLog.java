@@ -18,12 +18,17 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * DebugLog is a class for logging debugging information.  Logging can be
  * enabled or disabled by creating or deleting the log file.  Just use "touch
  * {filename}" to start logging.
  *
+ * With asynchronous logging enabled, messages are appended to a bounded ring
+ * buffer and written by a background thread.  The log file is only checked
+ * periodically, so it may take a second to start or stop logging.
+ *
  * @author Douglas Lau
  */
 public final class DebugLog {
@@ -42,6 +47,30 @@ public final class DebugLog {
 		}
 	};
 
+	/** Capacity of asynchronous ring buffer */
+	static private final int ASYNC_CAPACITY = 65536;
+
+	/** Asynchronous log writer (null for synchronous logging) */
+	static private volatile DebugLogWriter WRITER = null;
+
+	/** Enable asynchronous logging for all debug logs */
+	static public synchronized void enableAsync() {
+		if (null == WRITER)
+			WRITER = new DebugLogWriter(ASYNC_CAPACITY);
+	}
+
+	/** Disable asynchronous logging.  All queued messages are written and
+	 * flushed before returning. */
+	static public void disableAsync() {
+		DebugLogWriter w;
+		synchronized (DebugLog.class) {
+			w = WRITER;
+			WRITER = null;
+		}
+		if (w != null)
+			w.close();
+	}
+
 	/** Initialize the debug log mechanism.
 	 * @param p File path to store log files.
 	 * @param m Initial message when creating log file.
@@ -94,6 +123,28 @@ public final class DebugLog {
 	/** Debug log buffered writer */
 	private BufferedWriter bw = null;
 
+	/** Flag indicating log file is writable (for async logging) */
+	private volatile boolean open = false;
+
+	/** Async writer this log is registered with */
+	private volatile DebugLogWriter registered = null;
+
+	/** Count of messages dropped because the ring buffer was full */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Count of dropped messages already reported */
+	private long dropped_reported = 0;
+
+	/** Get the async log writer, registering this log if necessary */
+	private DebugLogWriter asyncWriter() {
+		DebugLogWriter w = WRITER;
+		if (w != null && w != registered) {
+			registered = w;
+			w.register(this);
+		}
+		return w;
+	}
+
 	/** Check if we can write to the log file */
 	private synchronized boolean canWrite(File file) throws IOException {
 		boolean w = file.canWrite();
@@ -106,6 +157,8 @@ public final class DebugLog {
 
 	/** Check if the debug log is open for writing */
 	public boolean isOpen() {
+		if (asyncWriter() != null)
+			return open;
 		try {
 			return canWrite(getFile());
 		}
@@ -116,32 +169,98 @@ public final class DebugLog {
 	}
 
 	/** Log a message in the debug log file */
-	public synchronized void log(String m) {
+	public void log(String m) {
+		DebugLogWriter w = asyncWriter();
+		if (w != null) {
+			long now = TimeSteward.currentTimeMillis();
+			if (open && !w.append(this, now, m))
+				dropped.incrementAndGet();
+		} else
+			logSync(m);
+	}
+
+	/** Log a message synchronously in the debug log file */
+	private synchronized void logSync(String m) {
 		try {
 			File file = getFile();
-			if (canWrite(file))
-				log(file, m);
+			if (canWrite(file)) {
+				write(file, TimeSteward.currentTimeMillis(), m);
+				bw.flush();
+			}
 		}
 		catch (IOException e) {
 			handleException(e);
 		}
 	}
 
-	/** Write a message in the debug log file */
-	private void log(File file, String m) throws IOException {
+	/** Write a message in the debug log file (without flushing) */
+	private void write(File file, long time, String m)
+		throws IOException
+	{
 		if (bw == null) {
 			bw = new BufferedWriter(new FileWriter(file, true));
-			log(bw, "DebugLog: " + name);
+			log(bw, time, "DebugLog: " + name);
 		}
-		log(bw, m);
-		bw.flush();
+		log(bw, time, m);
 	}
 
 	/** Write a log message to a buffered writer */
-	private void log(BufferedWriter bw, String m) throws IOException {
-		bw.write(TimeSteward.currentDateTimeString(true));
+	private void log(BufferedWriter bw, long time, String m)
+		throws IOException
+	{
+		bw.write(TimeSteward.dateTimeString(time, true));
 		bw.write(" ");
 		bw.write(m);
 		bw.newLine();
 	}
+
+	/** Write a message from the async writer thread */
+	synchronized void writeAsync(long time, String m) {
+		if (open) {
+			try {
+				write(getFile(), time, m);
+			}
+			catch (IOException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	/** Flush the log file from the async writer thread */
+	synchronized void flushAsync() {
+		try {
+			if (bw != null)
+				bw.flush();
+		}
+		catch (IOException e) {
+			handleException(e);
+		}
+	}
+
+	/** Check if the log file is writable (for async logging), and report
+	 * any dropped messages */
+	synchronized void checkOpen() {
+		try {
+			File file = getFile();
+			open = canWrite(file);
+			long d = dropped.get();
+			if (open && d > dropped_reported) {
+				write(file, TimeSteward.currentTimeMillis(),
+					"DROPPED " + (d - dropped_reported) +
+					" messages");
+				bw.flush();
+				dropped_reported = d;
+			}
+		}
+		catch (IOException e) {
+			handleException(e);
+			open = false;
+		}
+	}
+
+	/** Get the count of messages dropped because the async ring buffer
+	 * was full */
+	public long getDropped() {
+		return dropped.get();
+	}
 }
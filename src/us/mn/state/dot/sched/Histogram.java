@@ -0,0 +1,131 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram with log-linear buckets (like HdrHistogram).  Values
+ * below 16 are counted exactly; larger values are counted in buckets which
+ * are 1/8 of a power of two wide, giving a precision of 12.5%.  Recording a
+ * value is a few shifts, three atomic adds (bucket count, total count and
+ * sum) and a check of the maximum, with no allocation.  The total, sum and
+ * maximum are shared by all buckets, so they are contended when many threads
+ * record at once.
+ *
+ * @author Douglas Lau
+ */
+public final class Histogram {
+
+	/** Number of sub-bucket bits per power of two */
+	static private final int SUB_BITS = 3;
+
+	/** Number of sub-buckets per power of two */
+	static private final int SUB = 1 << SUB_BITS;
+
+	/** Values below this are counted exactly */
+	static private final int LINEAR = SUB << 1;
+
+	/** Highest power of two tracked (larger values are clamped) */
+	static private final int MAX_EXP = 40;
+
+	/** Number of buckets */
+	static private final int N_BUCKETS = bucket(1L << MAX_EXP) + 1;
+
+	/** Get the bucket for a value */
+	static private int bucket(long v) {
+		if (v < LINEAR)
+			return (int) Math.max(v, 0);
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+		return LINEAR + (e - SUB_BITS - 1) * SUB + sub;
+	}
+
+	/** Get the highest value counted in a bucket */
+	static private long highestValue(int b) {
+		if (b < LINEAR)
+			return b;
+		int e = (b - LINEAR) / SUB + SUB_BITS + 1;
+		long sub = (b - LINEAR) % SUB;
+		long width = 1L << (e - SUB_BITS);
+		return (SUB + sub) * width + width - 1;
+	}
+
+	/** Bucket counts */
+	private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+
+	/** Total count */
+	private final AtomicLong total = new AtomicLong();
+
+	/** Sum of all values */
+	private final AtomicLong sum = new AtomicLong();
+
+	/** Maximum value */
+	private final AtomicLong max = new AtomicLong();
+
+	/** Record a value */
+	public void record(long v) {
+		int b = Math.min(bucket(v), N_BUCKETS - 1);
+		counts.incrementAndGet(b);
+		total.incrementAndGet();
+		sum.addAndGet(v);
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v))
+			m = max.get();
+	}
+
+	/** Get the total count of values */
+	public long getCount() {
+		return total.get();
+	}
+
+	/** Get the mean value */
+	public double getMean() {
+		long n = total.get();
+		return (n > 0) ? (double) sum.get() / n : 0;
+	}
+
+	/** Get the maximum value */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Get the value at a percentile.
+	 * @param p Percentile (0 - 100).
+	 * @return Highest value equivalent to the percentile value. */
+	public long getPercentile(double p) {
+		long n = total.get();
+		if (n == 0)
+			return 0;
+		long rank = (long) Math.ceil(n * p / 100);
+		long c = 0;
+		for (int b = 0; b < N_BUCKETS; b++) {
+			c += counts.get(b);
+			if (c >= rank && c > 0)
+				return Math.min(highestValue(b), getMax());
+		}
+		return getMax();
+	}
+
+	/** Reset all counts */
+	public void reset() {
+		for (int b = 0; b < N_BUCKETS; b++)
+			counts.set(b, 0);
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
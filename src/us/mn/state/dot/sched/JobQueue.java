@@ -0,0 +1,55 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Collection;
+
+/**
+ * A job queue holds the jobs which a scheduler needs to perform, ordered by
+ * their monotonic deadlines.  Job queues are not thread-safe; the scheduler
+ * synchronizes all access to its queue.
+ *
+ * @author Douglas Lau
+ */
+public interface JobQueue {
+
+	/** Add a job to the queue */
+	void add(Job job);
+
+	/** Remove a job from the queue.
+	 * @return true if the job was in the queue. */
+	boolean remove(Job job);
+
+	/** Remove all jobs from the queue.
+	 * @param c Collection to add the jobs to. */
+	void drainTo(Collection<Job> c);
+
+	/** Remove the first job which is due.
+	 * @param now Current monotonic time (ms).
+	 * @return First job due at or before now, or null if none are due. */
+	Job poll(long now);
+
+	/** Get the time the first job is due.  This may be earlier than the
+	 * actual time, but never later.
+	 * @return Time (ms) when the first job could be due, or
+	 *         Long.MAX_VALUE if the queue is empty. */
+	long firstTime();
+
+	/** Get the number of jobs in the queue */
+	int size();
+
+	/** Check if the queue is empty */
+	boolean isEmpty();
+}
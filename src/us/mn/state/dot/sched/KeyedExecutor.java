@@ -0,0 +1,110 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor wrapper which serializes tasks with the same key.  Tasks with
+ * equal keys are run one at a time, in the order they were submitted.
+ * Tasks with a null key (or different keys) may run concurrently.
+ *
+ * @author Douglas Lau
+ */
+final class KeyedExecutor {
+
+	/** Underlying executor */
+	private final Executor executor;
+
+	/** Queued tasks for each active key */
+	private final HashMap<Object, ArrayDeque<Runnable>> active =
+		new HashMap<Object, ArrayDeque<Runnable>>();
+
+	/** Create a keyed executor */
+	KeyedExecutor(Executor e) {
+		executor = e;
+	}
+
+	/** Execute a task.  If the executor rejects the task, it is run on
+	 * the calling thread instead.
+	 * @param key Serialization key (may be null).
+	 * @param task Task to run. */
+	void execute(Object key, Runnable task) {
+		if (key != null && !activate(key, task))
+			return;
+		submit((key != null) ? new KeyRunner(key, task) : task);
+	}
+
+	/** Submit a task to the executor, or run it if rejected */
+	private void submit(Runnable r) {
+		try {
+			executor.execute(r);
+		}
+		catch (RejectedExecutionException e) {
+			r.run();
+		}
+	}
+
+	/** Activate a key.
+	 * @return true if the key was idle, false if task was queued. */
+	private synchronized boolean activate(Object key, Runnable task) {
+		ArrayDeque<Runnable> q = active.get(key);
+		if (q != null) {
+			q.add(task);
+			return false;
+		}
+		active.put(key, new ArrayDeque<Runnable>());
+		return true;
+	}
+
+	/** Get the next queued task for a key, or deactivate it */
+	private synchronized Runnable nextTask(Object key) {
+		ArrayDeque<Runnable> q = active.get(key);
+		Runnable r = q.poll();
+		if (null == r)
+			active.remove(key);
+		return r;
+	}
+
+	/** Runner for all queued tasks with one key */
+	private final class KeyRunner implements Runnable {
+		private final Object key;
+		private final Runnable first;
+		private KeyRunner(Object k, Runnable t) {
+			key = k;
+			first = t;
+		}
+		public void run() {
+			Runnable r = first;
+			try {
+				while (r != null) {
+					r.run();
+					r = nextTask(key);
+				}
+			}
+			finally {
+				// A task threw, so hand the rest to a new runner
+				if (r != null) {
+					Runnable n = nextTask(key);
+					if (n != null)
+						submit(new KeyRunner(key, n));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayDeque;
+
+/**
+ * Work queue with a lane for each work priority (see Work.getPriority).
+ * Work is drained one item at a time, by weighted round-robin between the
+ * lanes (see WorkPriority), so new urgent work is performed next, even
+ * during a storm of low priority work.  Within each lane, work is performed
+ * in the order it was added.
+ *
+ * The depth and wait time (from add to drain) of each lane is recorded, to
+ * monitor latency for each priority.
+ *
+ * @author Douglas Lau
+ */
+public final class LaneWorkQueue implements WorkQueue {
+
+	/** All priorities */
+	static private final WorkPriority[] PRIORITIES = WorkPriority.values();
+
+	/** Lanes of work to do (one per priority) */
+	private final ArrayDeque<Work>[] lanes;
+
+	/** Remaining credits for each lane in current round */
+	private final int[] credits = new int[PRIORITIES.length];
+
+	/** Wait times for each lane (us) */
+	private final Histogram[] waits = new Histogram[PRIORITIES.length];
+
+	/** Create a new lane work queue */
+	public LaneWorkQueue() {
+		// Generic array creation is not allowed
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ArrayDeque<Work>[] l = new ArrayDeque[PRIORITIES.length];
+		lanes = l;
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			lanes[i] = new ArrayDeque<Work>();
+			waits[i] = new Histogram();
+		}
+		refill();
+	}
+
+	/** Refill credits for all lanes */
+	private void refill() {
+		for (int i = 0; i < PRIORITIES.length; i++)
+			credits[i] = PRIORITIES[i].weight;
+	}
+
+	/** Add work to the queue */
+	@Override
+	public synchronized void add(Work w) {
+		w.enqueued = System.nanoTime();
+		lanes[w.getPriority().ordinal()].add(w);
+		notify();
+	}
+
+	/** Wait for work, then remove it from the queue */
+	@Override
+	public synchronized int drain(Work[] batch)
+		throws InterruptedException
+	{
+		int lane = nextLane();
+		while (lane < 0) {
+			wait();
+			lane = nextLane();
+		}
+		Work w = lanes[lane].poll();
+		waits[lane].record((System.nanoTime() - w.enqueued) / 1000);
+		batch[0] = w;
+		return 1;
+	}
+
+	/** Remove the oldest work from any lane */
+	@Override
+	public synchronized Work poll() {
+		ArrayDeque<Work> oldest = null;
+		for (ArrayDeque<Work> lane: lanes) {
+			Work w = lane.peek();
+			if (w != null && (null == oldest ||
+			    w.enqueued - oldest.peek().enqueued < 0))
+				oldest = lane;
+		}
+		return (oldest != null) ? oldest.poll() : null;
+	}
+
+	/** Get the next lane to drain.
+	 * @return Lane number, or -1 if all lanes are empty. */
+	private int nextLane() {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < lanes.length; i++) {
+				if (credits[i] > 0 && !lanes[i].isEmpty()) {
+					credits[i]--;
+					return i;
+				}
+			}
+			// Start a new round
+			refill();
+		}
+		return -1;
+	}
+
+	/** Get the count of work in the queue */
+	@Override
+	public synchronized int size() {
+		int n = 0;
+		for (ArrayDeque<Work> lane: lanes)
+			n += lane.size();
+		return n;
+	}
+
+	/** Get the count of work in one lane */
+	public synchronized int getDepth(WorkPriority p) {
+		return lanes[p.ordinal()].size();
+	}
+
+	/** Get the wait times (us) of work drained from one lane */
+	public Histogram getWaitTimes(WorkPriority p) {
+		return waits[p.ordinal()];
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * Policies for a repeating job which misses scheduled times, either because
+ * it ran past the next time (an overrun), or because it was added late.
+ *
+ * @author Douglas Lau
+ */
+public enum MisfirePolicy {
+	SKIP,		/* skip missed times; wait for the next one */
+	FIRE_ONCE,	/* perform once immediately, then resume schedule */
+	CATCH_UP,	/* perform each missed time, in bounded bursts */
+	STRETCH;	/* skip times to keep idle time after each run */
+}
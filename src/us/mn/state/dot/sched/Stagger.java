@@ -0,0 +1,142 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Stagger assigns offsets to repeating jobs with the same interval, to spread
+ * them out within the interval instead of performing all of them at each
+ * interval boundary.  Offsets are multiples of 1/1000 of the interval, so
+ * jobs stay aligned to the interval.
+ *
+ * A new job gets the next offset of a van der Corput sequence (0, 1/2, 1/4,
+ * 3/4, ...), which keeps the jobs evenly spread as they are added, without
+ * moving other jobs.  After jobs are added or removed, the whole group is
+ * rebalanced (at most once per interval), giving each job a share of the
+ * interval proportional to its smoothed execution time.  Jobs keep their
+ * order within the interval, so they move as little as possible.
+ *
+ * Stagger is not thread-safe; the scheduler synchronizes all access.
+ *
+ * @author Douglas Lau
+ */
+final class Stagger {
+
+	/** Number of offset slots in each interval */
+	static private final int SLOTS = 1000;
+
+	/** Group of jobs with the same interval */
+	static private final class Group {
+		private final long interval;
+		private final LinkedHashSet<Job> jobs =
+			new LinkedHashSet<Job>();
+		private int n_added;
+		private boolean dirty;
+		private long rebalanced;
+		private Group(long i, long mono) {
+			interval = i;
+			rebalanced = mono;
+		}
+	}
+
+	/** Comparator for ordering jobs by stagger offset */
+	static private final Comparator<Job> BY_OFFSET = new Comparator<Job>() {
+		public int compare(Job a, Job b) {
+			return Long.compare(a.getStagger(), b.getStagger());
+		}
+	};
+
+	/** Groups of jobs for each interval */
+	private final HashMap<Long, Group> groups = new HashMap<Long, Group>();
+
+	/** Get the offset of a slot in an interval */
+	static private long slotOffset(long interval, long slot) {
+		return interval * slot / SLOTS;
+	}
+
+	/** Add a job.  If the job can be staggered, its stagger offset is set.
+	 * @param job Job to add.
+	 * @param mono Current monotonic time.
+	 * @return true if the job was staggered. */
+	boolean add(Job job, long mono) {
+		if (!job.canStagger())
+			return false;
+		Long i = job.getInterval();
+		Group g = groups.get(i);
+		if (null == g) {
+			g = new Group(i, mono);
+			groups.put(i, g);
+		}
+		if (g.jobs.add(job)) {
+			long f = Integer.reverse(g.n_added) >>> 1;
+			g.n_added++;
+			long slot = f * SLOTS >>> 31;
+			job.setStagger(slotOffset(g.interval, slot));
+			g.dirty = true;
+		}
+		return true;
+	}
+
+	/** Remove a job (when it is cancelled or finished) */
+	void remove(Job job) {
+		if (!job.canStagger())
+			return;
+		Group g = groups.get(job.getInterval());
+		if (g != null && g.jobs.remove(job)) {
+			g.dirty = true;
+			if (g.jobs.isEmpty())
+				groups.remove(g.interval);
+		}
+	}
+
+	/** Check if the group of a job needs to be rebalanced.  This should
+	 * be called before each next time of a job is computed.
+	 * @param job Job to check.
+	 * @param mono Current monotonic time. */
+	void check(Job job, long mono) {
+		if (!job.canStagger())
+			return;
+		Group g = groups.get(job.getInterval());
+		if (g != null && g.dirty && mono - g.rebalanced >= g.interval)
+			rebalance(g, mono);
+	}
+
+	/** Rebalance a group, weighted by execution time */
+	private void rebalance(Group g, long mono) {
+		ArrayList<Job> jobs = new ArrayList<Job>(g.jobs);
+		Collections.sort(jobs, BY_OFFSET);
+		long total = 0;
+		for (Job job: jobs)
+			total += weight(job);
+		long cum = 0;
+		for (Job job: jobs) {
+			long slot = cum * SLOTS / total;
+			job.setStagger(slotOffset(g.interval, slot));
+			cum += weight(job);
+		}
+		g.dirty = false;
+		g.rebalanced = mono;
+	}
+
+	/** Get the weight of a job (smoothed execution time, at least 1) */
+	static private long weight(Job job) {
+		return Math.max(job.getAverageRun(), 1);
+	}
+}
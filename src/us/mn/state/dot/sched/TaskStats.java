@@ -0,0 +1,150 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for a named task (job or work).
+ *
+ * @author Douglas Lau
+ */
+public final class TaskStats implements TaskStatsMBean {
+
+	/** Lateness histogram (us) */
+	private final Histogram lateness = new Histogram();
+
+	/** Execution time histogram (us) */
+	private final Histogram runtime = new Histogram();
+
+	/** Exception count */
+	private final AtomicLong exceptions = new AtomicLong();
+
+	/** Coalesced duplicate count */
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/** Overrun count */
+	private final AtomicLong overruns = new AtomicLong();
+
+	/** Missed time count */
+	private final AtomicLong missed = new AtomicLong();
+
+	/** Record one run of the task.
+	 * @param late_us Lateness (us).
+	 * @param run_us Execution time (us).
+	 * @param failed True if the task threw an exception. */
+	void record(long late_us, long run_us, boolean failed) {
+		lateness.record(late_us);
+		runtime.record(run_us);
+		if (failed)
+			exceptions.incrementAndGet();
+	}
+
+	/** Record a duplicate coalesced into pending work */
+	void recordCoalesced() {
+		coalesced.incrementAndGet();
+	}
+
+	/** Record overruns and missed times of a repeating job */
+	void recordMisfire(long o, long m) {
+		overruns.addAndGet(o);
+		missed.addAndGet(m);
+	}
+
+	@Override
+	public long getRunCount() {
+		return runtime.getCount();
+	}
+
+	@Override
+	public long getExceptionCount() {
+		return exceptions.get();
+	}
+
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	@Override
+	public long getOverrunCount() {
+		return overruns.get();
+	}
+
+	@Override
+	public long getMissedCount() {
+		return missed.get();
+	}
+
+	@Override
+	public double getLatenessMean() {
+		return lateness.getMean();
+	}
+
+	@Override
+	public long getLateness50() {
+		return lateness.getPercentile(50);
+	}
+
+	@Override
+	public long getLateness99() {
+		return lateness.getPercentile(99);
+	}
+
+	@Override
+	public long getLateness999() {
+		return lateness.getPercentile(99.9);
+	}
+
+	@Override
+	public long getLatenessMax() {
+		return lateness.getMax();
+	}
+
+	@Override
+	public double getRuntimeMean() {
+		return runtime.getMean();
+	}
+
+	@Override
+	public long getRuntime50() {
+		return runtime.getPercentile(50);
+	}
+
+	@Override
+	public long getRuntime99() {
+		return runtime.getPercentile(99);
+	}
+
+	@Override
+	public long getRuntime999() {
+		return runtime.getPercentile(99.9);
+	}
+
+	@Override
+	public long getRuntimeMax() {
+		return runtime.getMax();
+	}
+
+	@Override
+	public void reset() {
+		lateness.reset();
+		runtime.reset();
+		exceptions.set(0);
+		coalesced.set(0);
+		overruns.set(0);
+		missed.set(0);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * Management interface for statistics of a named task (job or work).
+ * All times are in microseconds.
+ *
+ * @author Douglas Lau
+ */
+public interface TaskStatsMBean {
+
+	/** Get the number of times the task was performed */
+	long getRunCount();
+
+	/** Get the number of times the task threw an exception */
+	long getExceptionCount();
+
+	/** Get the number of duplicates coalesced into pending work */
+	long getCoalescedCount();
+
+	/** Get the number of times a repeating job ran past its next time */
+	long getOverrunCount();
+
+	/** Get the number of scheduled times a repeating job missed */
+	long getMissedCount();
+
+	/** Get the mean lateness (start time minus scheduled time) */
+	double getLatenessMean();
+
+	/** Get the median lateness */
+	long getLateness50();
+
+	/** Get the 99th percentile lateness */
+	long getLateness99();
+
+	/** Get the 99.9th percentile lateness */
+	long getLateness999();
+
+	/** Get the maximum lateness */
+	long getLatenessMax();
+
+	/** Get the mean execution time */
+	double getRuntimeMean();
+
+	/** Get the median execution time */
+	long getRuntime50();
+
+	/** Get the 99th percentile execution time */
+	long getRuntime99();
+
+	/** Get the 99.9th percentile execution time */
+	long getRuntime999();
+
+	/** Get the maximum execution time */
+	long getRuntimeMax();
+
+	/** Reset all statistics */
+	void reset();
+}
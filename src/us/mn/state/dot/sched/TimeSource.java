@@ -14,6 +14,8 @@
  */
 package us.mn.state.dot.sched;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * A Time Source abstracts the system time.
  *
@@ -24,9 +26,24 @@ public interface TimeSource {
 	/** Get the current time */
 	long currentTimeMillis();
 
+	/** Get the current value of a monotonic clock, in nanoseconds.  This
+	 * is not related to the wall clock time, and only differences between
+	 * two values are meaningful.  The default is System.nanoTime(). */
+	default long nanoTime() {
+		return System.nanoTime();
+	}
+
 	/** Sleep for the specified number of milliseconds */
 	void sleep(long millis) throws InterruptedException;
 
 	/** Wait until an object is notified, or timeout expires */
 	void wait(Object monitor, long ms) throws InterruptedException;
+
+	/** Park the current thread until it is unparked, interrupted, or the
+	 * timeout expires (see LockSupport.parkNanos).
+	 * @param blocker Object responsible for parking.
+	 * @param nanos Maximum time to park (ns). */
+	default void parkNanos(Object blocker, long nanos) {
+		LockSupport.parkNanos(blocker, nanos);
+	}
 }
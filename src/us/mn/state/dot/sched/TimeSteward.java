@@ -15,10 +15,9 @@
 package us.mn.state.dot.sched;
 
 import java.net.Socket;			// Suppress javadoc warning
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.TimeZone;
 
 /**
  * The time steward provides static methods dealing with time sources.
@@ -47,13 +46,29 @@ public final class TimeSteward {
 	/** Time source */
 	static private TimeSource source = new SystemTimeSource();
 
+	/** Monotonic time when the time source was set (ns) */
+	static private long anchor_ns = source.nanoTime();
+
+	/** Wall clock time when the time source was set (ms) */
+	static private long anchor_ms = source.currentTimeMillis();
+
+	/** Cache for formatting local times */
+	static private final DateTimeCache LOCAL = new DateTimeCache(true);
+
+	/** Cache for formatting UTC times */
+	static private final DateTimeCache UTC = new DateTimeCache(false);
+
 	/** Don't allow instantiation */
 	private TimeSteward() { }
 
-	/** Set the time source */
+	/** Set the time source.  The default time zone is checked again,
+	 * since the last check was timed with the old source. */
 	static public void setTimeSource(TimeSource ts) {
 		assert ts != null;
+		anchor_ns = ts.nanoTime();
+		anchor_ms = ts.currentTimeMillis();
 		source = ts;
+		LOCAL.checkZone();
 	}
 
 	/** Get the current time */
@@ -61,6 +76,26 @@ public final class TimeSteward {
 		return source.currentTimeMillis();
 	}
 
+	/** Get the current value of the monotonic clock (ns) */
+	static public long nanoTime() {
+		return source.nanoTime();
+	}
+
+	/** Get the current monotonic time in milliseconds.  This starts out
+	 * equal to the wall clock time when the time source is set, but is not
+	 * affected by any later changes to the wall clock. */
+	static public long monotonicMillis() {
+		return anchor_ms + (source.nanoTime() - anchor_ns) / 1000000;
+	}
+
+	/** Get the time until a monotonic time, in nanoseconds.
+	 * @param mono Monotonic time (ms), from monotonicMillis.
+	 * @return Nanoseconds until the start of that millisecond. */
+	static public long nanosUntil(long mono) {
+		long ns = anchor_ns + (mono - anchor_ms) * 1000000;
+		return ns - source.nanoTime();
+	}
+
 	/** Sleep for the specified number of milliseconds */
 	static public void sleep(long ms) throws InterruptedException {
 		source.sleep(ms);
@@ -83,6 +118,11 @@ public final class TimeSteward {
 		source.wait(monitor, ms);
 	}
 
+	/** Park the current thread until unparked, or timeout expires */
+	static public void parkNanos(Object blocker, long nanos) {
+		source.parkNanos(blocker, nanos);
+	}
+
 	/** Get a date instance from the time source */
 	static public Date getDateInstance() {
 		return new Date(currentTimeMillis());
@@ -97,9 +137,7 @@ public final class TimeSteward {
 
 	/** Get the current local minute-of-day as an int */
 	static public int currentMinuteOfDayInt() {
-		Calendar cal = getCalendarInstance();
-		return cal.get(Calendar.HOUR_OF_DAY) * 60 +
-		       cal.get(Calendar.MINUTE);
+		return currentSecondOfDayInt() / 60;
 	}
 
 	/** Get the current local second-of-day as an int */
@@ -107,13 +145,19 @@ public final class TimeSteward {
 		return secondOfDayInt(currentTimeMillis());
 	}
 
+	/** Get the local time zone (the default is checked periodically) */
+	static ZoneId localZone() {
+		return LOCAL.getZone();
+	}
+
+	/** Get the local UTC offset at a time (ms) */
+	static long localOffset(long time) {
+		return LOCAL.offset(time);
+	}
+
 	/** Get the local second-of-day as an int */
 	static public int secondOfDayInt(long time) {
-		Calendar cal = Calendar.getInstance();
-		cal.setTimeInMillis(time);
-		return cal.get(Calendar.HOUR_OF_DAY) * 3600 +
-		       cal.get(Calendar.MINUTE) * 60 +
-		       cal.get(Calendar.SECOND);
+		return LOCAL.secondOfDay(time);
 	}
 
 	/** Get the current local date as a short YYYYMMDD string */
@@ -125,15 +169,20 @@ public final class TimeSteward {
 	 * @param local True for local time, false for UTC.
 	 */
 	static public String currentDateTimeString(boolean local) {
-		SimpleDateFormat sdf = createDateFormat("yyyy-MM-dd HH:mm:ss",
-			local);
-		return sdf.format(new Date(currentTimeMillis()));
+		return dateTimeString(currentTimeMillis(), local);
+	}
+
+	/** Get date and time as string.
+	 * @param date Time to format.
+	 * @param local True for local time, false for UTC.
+	 */
+	static public String dateTimeString(long date, boolean local) {
+		return local ? LOCAL.dateTime(date) : UTC.dateTime(date);
 	}
 
 	/** Get the local date as a short YYYYMMDD string */
 	static public String dateShortString(long date) {
-		SimpleDateFormat sdf = createDateFormat("yyyyMMdd", true);
-		return sdf.format(new Date(date));
+		return LOCAL.dateShort(date);
 	}
 
 	/** Get the current local time as short string */
@@ -143,28 +192,6 @@ public final class TimeSteward {
 
 	/** Get the local time as short HH:mm:ss string */
 	static public String timeShortString(long date) {
-		SimpleDateFormat sdf = createDateFormat("HH:mm:ss", true);
-		return sdf.format(new Date(date));
-	}
-
-	/** Format a date to a string.
-	 * @param format Format specifier.
-	 * @param local Use local time or UTC.
-	 * @param date Date to format.
-	 * @return Formatted string. */
-	static private SimpleDateFormat createDateFormat(String format,
-		boolean local)
-	{
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		sdf.setTimeZone(getTimeZone(local));
-		return sdf;
-	}
-
-	/** Get a time zone */
-	static private TimeZone getTimeZone(boolean local) {
-		if(local)
-			return TimeZone.getDefault();
-		else
-			return TimeZone.getTimeZone("UTC");
+		return LOCAL.time(date);
 	}
 }
@@ -0,0 +1,278 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A virtual time source simulates the passage of time, for fast and
+ * repeatable tests.  Time only moves forward when every watched thread is
+ * idle (waiting or terminated).  It then jumps straight to the earliest
+ * deadline of any thread waiting through this time source, and wakes that
+ * thread.  This is a discrete-event simulation, so a day of scheduled jobs
+ * can be performed in a few seconds, using the same Scheduler and Job code.
+ *
+ * The watched threads are all threads in the thread group (and subgroups) of
+ * the thread which created the time source.  Threads waiting without a
+ * timeout (such as idle scheduler and worker threads) count as idle.  A
+ * thread which has been notified may still appear to be waiting, so all
+ * threads must stay idle for a short settle time (in real time) before time
+ * is advanced.
+ *
+ * Busy loops which check the time (such as Scheduler spin waits) will never
+ * finish with a virtual time source.
+ *
+ * @author Douglas Lau
+ */
+public final class VirtualTimeSource implements TimeSource {
+
+	/** Settle time before advancing (ns, real time) */
+	static private final long SETTLE_NS = 20000;
+
+	/** Time to park while threads are busy (ns, real time) */
+	static private final long BUSY_NS = 100000;
+
+	/** Thread waiting on the virtual clock */
+	static private final class Waiter {
+		private final Thread thread;
+		private final Object monitor;
+		private final long deadline;
+		private boolean woken;
+		private Waiter(Object m, long d) {
+			thread = Thread.currentThread();
+			monitor = m;
+			deadline = d;
+		}
+	}
+
+	/** Wall clock time at start (ms) */
+	private final long start_ms;
+
+	/** Elapsed virtual time (ns) */
+	private volatile long elapsed = 0;
+
+	/** Threads waiting on the virtual clock */
+	private final ArrayList<Waiter> waiters = new ArrayList<Waiter>();
+
+	/** Number of woken waiters which have not yet returned */
+	private int n_woken = 0;
+
+	/** Count of waits started or finished (to detect activity) */
+	private long activity = 0;
+
+	/** Thread group to watch */
+	private final ThreadGroup group;
+
+	/** Thread which advances the time */
+	private final Thread advancer;
+
+	/** Create a virtual time source.
+	 * @param st Wall clock time at start (ms). */
+	public VirtualTimeSource(long st) {
+		start_ms = st;
+		group = Thread.currentThread().getThreadGroup();
+		advancer = new Thread(group, "VirtualTime") {
+			public void run() {
+				try {
+					advanceLoop();
+				}
+				catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		};
+		advancer.setDaemon(true);
+		advancer.start();
+	}
+
+	/** Create a virtual time source starting at the current time */
+	public VirtualTimeSource() {
+		this(System.currentTimeMillis());
+	}
+
+	/** Stop advancing the time */
+	public void stop() {
+		advancer.interrupt();
+	}
+
+	/** Get the current (virtual) time */
+	@Override
+	public long currentTimeMillis() {
+		return start_ms + elapsed / 1000000;
+	}
+
+	/** Get the current (virtual) monotonic time */
+	@Override
+	public long nanoTime() {
+		return elapsed;
+	}
+
+	/** Sleep for the specified number of (virtual) milliseconds */
+	@Override
+	public void sleep(long millis) throws InterruptedException {
+		long end = elapsed + millis * 1000000;
+		Object m = new Object();
+		synchronized (m) {
+			while (elapsed < end) {
+				long ms = (end - elapsed + 999999) / 1000000;
+				wait(m, ms);
+			}
+		}
+	}
+
+	/** Wait until an object is notified, or (virtual) timeout expires */
+	@Override
+	public void wait(Object monitor, long ms) throws InterruptedException {
+		if (ms <= 0) {
+			monitor.wait();
+			return;
+		}
+		Waiter w = addWaiter(monitor, ms * 1000000);
+		try {
+			monitor.wait();
+		}
+		finally {
+			removeWaiter(w);
+		}
+	}
+
+	/** Park the current thread until unparked, or (virtual) timeout */
+	@Override
+	public void parkNanos(Object blocker, long nanos) {
+		if (nanos <= 0)
+			return;
+		Waiter w = addWaiter(null, nanos);
+		try {
+			LockSupport.park(blocker);
+		}
+		finally {
+			removeWaiter(w);
+		}
+	}
+
+	/** Add a waiter for the current thread */
+	private synchronized Waiter addWaiter(Object monitor, long nanos) {
+		Waiter w = new Waiter(monitor, elapsed + nanos);
+		waiters.add(w);
+		activity++;
+		notify();
+		return w;
+	}
+
+	/** Remove a waiter after it has returned */
+	private synchronized void removeWaiter(Waiter w) {
+		if (w.woken)
+			n_woken--;
+		else
+			waiters.remove(w);
+		activity++;
+		notify();
+	}
+
+	/** Advance the time whenever all watched threads are idle */
+	private void advanceLoop() throws InterruptedException {
+		while (true) {
+			waitSettled();
+			for (Waiter w: advance())
+				wake(w);
+		}
+	}
+
+	/** Wait until all woken waiters have returned, and all watched
+	 * threads are idle for the settle time. */
+	private void waitSettled() throws InterruptedException {
+		long act = checkActivity();
+		long idle = System.nanoTime();
+		while (true) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (!isIdle()) {
+				LockSupport.parkNanos(BUSY_NS);
+				act = checkActivity();
+				idle = System.nanoTime();
+				continue;
+			}
+			long a = checkActivity();
+			if (a != act) {
+				act = a;
+				idle = System.nanoTime();
+			} else if (System.nanoTime() - idle >= SETTLE_NS)
+				return;
+			Thread.yield();
+		}
+	}
+
+	/** Wait for woken waiters and pending deadlines.
+	 * @return Current activity count. */
+	private synchronized long checkActivity() throws InterruptedException {
+		while (n_woken > 0 || waiters.isEmpty())
+			wait();
+		return activity;
+	}
+
+	/** Check if all watched threads are idle */
+	private boolean isIdle() {
+		Thread[] threads = new Thread[group.activeCount() + 16];
+		int n = group.enumerate(threads, true);
+		for (int i = 0; i < n; i++) {
+			Thread t = threads[i];
+			if (t == advancer)
+				continue;
+			switch (t.getState()) {
+			case WAITING:
+			case TIMED_WAITING:
+			case TERMINATED:
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Advance the time to the first deadline.
+	 * @return List of waiters to wake. */
+	private synchronized ArrayList<Waiter> advance() {
+		long first = Long.MAX_VALUE;
+		for (Waiter w: waiters)
+			first = Math.min(first, w.deadline);
+		if (first > elapsed)
+			elapsed = first;
+		ArrayList<Waiter> due = new ArrayList<Waiter>();
+		Iterator<Waiter> it = waiters.iterator();
+		while (it.hasNext()) {
+			Waiter w = it.next();
+			if (w.deadline <= elapsed) {
+				it.remove();
+				w.woken = true;
+				n_woken++;
+				due.add(w);
+			}
+		}
+		return due;
+	}
+
+	/** Wake a waiter */
+	private void wake(Waiter w) {
+		if (w.monitor != null) {
+			synchronized (w.monitor) {
+				w.monitor.notifyAll();
+			}
+		} else
+			LockSupport.unpark(w.thread);
+	}
+}
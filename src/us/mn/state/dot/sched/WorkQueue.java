@@ -0,0 +1,44 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * A work queue holds work for a worker to perform.  Any thread may add work,
+ * but only the worker thread may drain it.  Any thread may poll the oldest
+ * work, to drop it when the worker is at capacity.
+ *
+ * @author Douglas Lau
+ */
+public interface WorkQueue {
+
+	/** Add work to the queue, and wake up the worker thread */
+	void add(Work w);
+
+	/** Wait for work, then remove some work from the queue.
+	 * @param batch Array to store work to be performed.
+	 * @return Number of work items stored in batch (at least one). */
+	int drain(Work[] batch) throws InterruptedException;
+
+	/** Remove the oldest work from the queue, without waiting.  The
+	 * default cannot remove work, so nothing is dropped.
+	 * @return Oldest work, or null if none can be removed. */
+	default Work poll() {
+		return null;
+	}
+
+	/** Get the count of work in the queue.  This is work which has been
+	 * added, but not yet drained; drained work is never counted. */
+	int size();
+}
@@ -14,18 +14,48 @@
  */
 package us.mn.state.dot.sched;
 
-import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
 
 /**
- * Work for performing work on a dedicated thread.
+ * Work for performing work on a dedicated thread.  By default, work is held
+ * in a LockedWorkQueue, but a Worker can also be created with an
+ * MpscWorkQueue, which is lock-free for producers.  If an executor is set,
+ * the worker thread hands each work item off to the executor.
+ *
+ * The queue is unbounded by default, but a capacity can be set, with an
+ * overflow policy for adding work when it is full.  Work which is shed
+ * (rejected or dropped) is never performed; its future is cancelled.  With
+ * the DROP_OLDEST policy, the oldest work which has not been started is
+ * dropped when new work is added.  With the BLOCK policy, work added by the
+ * worker itself is rejected instead of blocking, since it could never be
+ * unblocked.
+ *
+ * With coalescing enabled, work with the same coalescing key as pending work
+ * (see Work.getCoalesceKey) is merged into the pending work instead of being
+ * queued.  Merged work is completed along with the pending work.
  *
  * @author Douglas Lau
  */
 public final class Worker {
 
+	/** Maximum number of work items to drain at once */
+	static private final int BATCH_SIZE = 64;
+
 	/** Worker thread group */
 	static private final ThreadGroup GROUP = new ThreadGroup("WORKER");
 
+	/** Worker currently performing work on this thread */
+	static private final ThreadLocal<Worker> CURRENT =
+		new ThreadLocal<Worker>();
+
 	/** Exception handler */
 	private final ExceptionHandler handler;
 
@@ -34,18 +64,63 @@ public final class Worker {
 		handler.handle(e);
 	}
 
+	/** Name of worker */
+	private final String name;
+
 	/** Thread for running work */
 	private final Thread thread;
 
-	/** Set of work to do */
-	private final PriorityQueue<Work> todo = new PriorityQueue<Work>();
+	/** Queue of work to do */
+	private final WorkQueue todo;
 
 	/** Flag to indicate disposing */
 	private boolean disposing = false;
 
+	/** Drained work in the current batch (cleared when started or
+	 * dropped) */
+	private final AtomicReferenceArray<Work> drained =
+		new AtomicReferenceArray<Work>(BATCH_SIZE);
+
+	/** Count of drained work in the current batch, not yet started */
+	private final AtomicInteger n_drained = new AtomicInteger();
+
+	/** Executor for performing work (null for worker thread) */
+	private volatile KeyedExecutor executor;
+
+	/** Task metrics (null if not enabled) */
+	private volatile TaskMetrics metrics;
+
+	/** Admission control for the queue */
+	private final AdmissionControl admission = new AdmissionControl(
+		new IntSupplier() {
+			public int getAsInt() {
+				return size();
+			}
+		});
+
+	/** Flag to enable coalescing of pending work */
+	private volatile boolean coalescing = false;
+
+	/** Pending (not yet started) work for each coalescing key */
+	private final ConcurrentHashMap<Object, Work> pending =
+		new ConcurrentHashMap<Object, Work>();
+
+	/** Count of work coalesced into pending work */
+	private final AtomicLong n_coalesced = new AtomicLong();
+
 	/** Create a Worker */
 	public Worker(String name, ExceptionHandler h) {
+		this(name, h, new LockedWorkQueue());
+	}
+
+	/** Create a Worker.
+	 * @param name Name of worker thread.
+	 * @param h Exception handler.
+	 * @param q Queue for work. */
+	public Worker(String name, ExceptionHandler h, WorkQueue q) {
+		this.name = name;
 		handler = h;
+		todo = q;
 		thread = new Thread(GROUP, name) {
 			public void run() {
 				try {
@@ -63,56 +138,225 @@ public final class Worker {
 
 	/** Perform work*/
 	private void performWork() throws InterruptedException {
-		Work w = waitWork();
+		Work[] batch = new Work[BATCH_SIZE];
 		while (!thread.isInterrupted()) {
-			performWork(w);
-			w = waitWork();
+			int n = todo.drain(batch);
+			for (int i = 0; i < n; i++) {
+				drained.lazySet(i, batch[i]);
+				batch[i] = null;
+			}
+			// Publish the batch to producers
+			n_drained.addAndGet(n);
+			for (int i = 0; i < n; i++) {
+				Work w = drained.getAndSet(i, null);
+				// Skip work which was dropped
+				if (null == w)
+					continue;
+				n_drained.decrementAndGet();
+				unpend(w);
+				admission.release();
+				KeyedExecutor ke = executor;
+				if (ke != null)
+					executeWork(ke, w);
+				else
+					w.performWork(handler, metrics);
+			}
 		}
 	}
 
-	/** Wait until work needs to be performed.
-	 * @return Work to be performed. */
-	private synchronized Work waitWork() throws InterruptedException {
-		while (todo.isEmpty())
-			wait();
-		return todo.poll();
+	/** Execute work with an executor */
+	private void executeWork(KeyedExecutor ke, final Work w) {
+		ke.execute(w.getKey(), new Runnable() {
+			public void run() {
+				CURRENT.set(Worker.this);
+				try {
+					w.performWork(handler, metrics);
+				}
+				finally {
+					CURRENT.remove();
+				}
+			}
+		});
 	}
 
-	/** Perform Work */
-	private void performWork(Work w) {
-		try {
-			w.performWork();
+	/** Add work to perform.  If the queue is full, the overflow policy
+	 * determines what happens.
+	 * @param w Work to perform.
+	 * @return Future which is completed with the work (or the exception
+	 *         it threw) as soon as it has been performed.
+	 * @throws RejectedExecutionException if the queue is full, with the
+	 *         REJECT policy (or BLOCK, after the timeout). */
+	public <W extends Work> CompletableFuture<W> addWork(W w) {
+		if (coalesce(w))
+			return w.getFuture();
+		if (admission.admit(!isCurrentThread()))
+			enqueue(w);
+		else {
+			unpend(w);
+			w.shed();
+			if (admission.getPolicy() != OverflowPolicy.DROP_NEWEST)
+				throw new RejectedExecutionException(name);
 		}
-		catch (Exception e) {
-			handleException(e);
-		}
-		catch (VirtualMachineError e) {
-			System.err.println("VIRTUAL MACHINE ERROR");
-			e.printStackTrace();
-			System.err.println("FATAL: RESTARTING");
-			System.exit(1);
+		return w.getFuture();
+	}
+
+	/** Try to add work to perform, without blocking.
+	 * @param w Work to perform.
+	 * @return Future which is completed with the work as soon as it has
+	 *         been performed, or null if the queue is full. */
+	public <W extends Work> CompletableFuture<W> tryAddWork(W w) {
+		if (coalesce(w))
+			return w.getFuture();
+		if (admission.admit(false)) {
+			enqueue(w);
+			return w.getFuture();
+		} else {
+			unpend(w);
+			return null;
 		}
 	}
 
-	/** Add work to perform */
-	public synchronized void addWork(Work w) {
+	/** Coalesce work into pending work with the same key.  If there is
+	 * no pending work for the key, the work becomes pending.
+	 * @param w Work to coalesce.
+	 * @return true if work was merged into pending work. */
+	private boolean coalesce(final Work w) {
+		Object key = coalescing ? w.getCoalesceKey() : null;
+		if (null == key)
+			return false;
+		Work p = pending.compute(key,
+			new BiFunction<Object, Work, Work>() {
+				public Work apply(Object k, Work pw) {
+					if (null == pw)
+						return w;
+					pw.coalesce(w);
+					return pw;
+				}
+			});
+		if (p == w)
+			return false;
+		w.follow(p);
+		n_coalesced.incrementAndGet();
+		TaskMetrics m = metrics;
+		if (m != null)
+			m.recordCoalesced(p.getName());
+		return true;
+	}
+
+	/** Remove work from pending map (when started or shed) */
+	private void unpend(Work w) {
+		Object key = w.getCoalesceKey();
+		if (key != null)
+			pending.remove(key, w);
+	}
+
+	/** Enable or disable coalescing of pending work */
+	public void setCoalescing(boolean c) {
+		coalescing = c;
+	}
+
+	/** Get the count of work coalesced into pending work */
+	public long getCoalescedCount() {
+		return n_coalesced.get();
+	}
+
+	/** Add work to the queue, dropping the oldest work if full */
+	private void enqueue(Work w) {
+		if (admission.dropOldest()) {
+			Work o = pollOldest();
+			if (o != null) {
+				unpend(o);
+				o.shed();
+				admission.dropped();
+			}
+		}
+		if (metrics != null)
+			w.enqueued = System.nanoTime();
 		todo.add(w);
-		notify();
 	}
 
-	/** Test if the current thread is the worker thread */
+	/** Remove the oldest work which has not been started.  Drained work
+	 * is older than any work still in the queue.
+	 * @return Oldest work, or null if none was found. */
+	private Work pollOldest() {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			Work w = drained.get(i);
+			if (w != null && drained.compareAndSet(i, w, null)) {
+				n_drained.decrementAndGet();
+				return w;
+			}
+		}
+		return todo.poll();
+	}
+
+	/** Set the capacity of the work queue.
+	 * @param cap Maximum number of work items.
+	 * @param p Policy for adding work when the queue is full.
+	 * @param ms Maximum time to block producers (BLOCK policy). */
+	public void setCapacity(int cap, OverflowPolicy p, long ms) {
+		admission.setCapacity(cap, p, ms);
+	}
+
+	/** Get the count of work shed because the queue was full */
+	public long getShedCount() {
+		return admission.getShedCount();
+	}
+
+	/** Get the count of producers blocked because the queue was full */
+	public long getBlockedCount() {
+		return admission.getBlockedCount();
+	}
+
+	/** Set an executor for performing work.  Work with equal keys is
+	 * performed one at a time, in order.
+	 * @param e Executor, or null to perform work on the worker thread. */
+	public void setExecutor(Executor e) {
+		executor = (e != null) ? new KeyedExecutor(e) : null;
+	}
+
+	/** Test if the current thread is the worker thread (or is performing
+	 * work for this worker with an executor) */
 	public boolean isCurrentThread() {
-		return Thread.currentThread() == thread;
+		return Thread.currentThread() == thread ||
+		       CURRENT.get() == this;
+	}
+
+	/** Enable task metrics, and publish them as JMX MBeans.  Lateness of
+	 * work is the time it waited in the queue. */
+	public synchronized void enableMetrics() {
+		if (null == metrics) {
+			metrics = new TaskMetrics("Worker", name,
+				new IntSupplier() {
+					public int getAsInt() {
+						return size();
+					}
+				}, admission,
+				new ExceptionHandler() {
+					public boolean handle(Exception e) {
+						handleException(e);
+						return true;
+					}
+				});
+		}
+	}
+
+	/** Get the task metrics (null if not enabled) */
+	public TaskMetrics getMetrics() {
+		return metrics;
 	}
 
 	/** Dispose of the worker */
 	public void dispose() {
+		TaskMetrics m = metrics;
+		if (m != null)
+			m.unregister();
 		disposing = true;
 		thread.interrupt();
 	}
 
-	/** Get the count of work in the queue */
-	public synchronized int size() {
-		return todo.size();
+	/** Get the count of work in the queue (including drained work which
+	 * has not been started yet) */
+	public int size() {
+		return todo.size() + n_drained.get();
 	}
 }
@@ -0,0 +1,86 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import junit.framework.TestCase;
+
+/**
+ * Cached time source tests
+ *
+ * @author Doug Lau
+ */
+public class CachedTimeSourceTest extends TestCase {
+
+	/** Maximum lag allowed for a late ticker thread (ms) */
+	static private final long SLACK_MS = 250;
+
+	protected final CachedTimeSource src = new CachedTimeSource(10);
+
+	public CachedTimeSourceTest(String name) {
+		super(name);
+	}
+
+	protected void tearDown() {
+		src.stop();
+	}
+
+	public void testStaleness() throws Exception {
+		long max_lag = 0;
+		long max_nlag = 0;
+		for (int i = 0; i < 100; i++) {
+			long t = src.currentTimeMillis();
+			long n = src.nanoTime();
+			long lag = System.currentTimeMillis() - t;
+			long nlag = System.nanoTime() - n;
+			// Cached time is never ahead
+			assertTrue(lag >= 0);
+			assertTrue(nlag >= 0);
+			max_lag = Math.max(max_lag, lag);
+			max_nlag = Math.max(max_nlag, nlag);
+			Thread.sleep(3);
+		}
+		assertTrue(max_lag < src.getResolution() + SLACK_MS);
+		assertTrue(max_nlag / 1000000 < src.getResolution() +
+			SLACK_MS);
+	}
+
+	public void testAdvance() throws Exception {
+		long t = src.currentTimeMillis();
+		long n = src.nanoTime();
+		Thread.sleep(100);
+		assertTrue(src.currentTimeMillis() - t >= 50);
+		assertTrue(src.nanoTime() - n >= 50000000);
+	}
+
+	public void testStopStart() throws Exception {
+		src.stop();
+		// Let the ticker thread exit
+		Thread.sleep(50);
+		long t = src.currentTimeMillis();
+		long n = src.nanoTime();
+		Thread.sleep(100);
+		assertEquals(t, src.currentTimeMillis());
+		assertEquals(n, src.nanoTime());
+		// Stopping again has no effect
+		src.stop();
+		src.start();
+		// Time is updated on start
+		assertTrue(src.currentTimeMillis() - t >= 100);
+		assertTrue(src.nanoTime() - n >= 100000000);
+		t = src.currentTimeMillis();
+		Thread.sleep(100);
+		assertTrue(src.currentTimeMillis() - t >= 50);
+	}
+}
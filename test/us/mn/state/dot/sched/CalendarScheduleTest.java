@@ -0,0 +1,120 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+
+/**
+ * Calendar schedule tests
+ *
+ * @author Doug Lau
+ */
+public class CalendarScheduleTest extends TestCase {
+
+	static private final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+	static private long time(String ldt) {
+		return LocalDateTime.parse(ldt).atZone(CHICAGO).toInstant()
+			.toEpochMilli();
+	}
+
+	static private CalendarSchedule lookup(int field, int value,
+		long offset)
+	{
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(0);
+		c.add(field, value);
+		return CalendarSchedule.lookup(field, value, c.getTimeInMillis(),
+			offset);
+	}
+
+	private TimeZone tz;
+
+	private VirtualTimeSource vts;
+
+	public CalendarScheduleTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() {
+		tz = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+		// Setting the time source checks the default time zone again
+		vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+	}
+
+	protected void tearDown() {
+		TimeZone.setDefault(tz);
+		TimeSteward.setTimeSource(new SystemTimeSource());
+		vts.stop();
+	}
+
+	public void testMonth() {
+		CalendarSchedule cs = lookup(Calendar.MONTH, 1, 0);
+		long t = time("2017-01-15T12:00");
+		assertEquals(time("2017-01-01T00:00"), cs.computePastTime(t));
+		assertEquals(time("2017-02-01T00:00"), cs.computeNextTime(t));
+		t = cs.computeNextTime(t);
+		assertEquals(time("2017-03-01T00:00"), cs.computeNextTime(t));
+		cs = lookup(Calendar.MONTH, 3, 0);
+		assertEquals(time("2017-04-01T00:00"), cs.computeNextTime(t));
+	}
+
+	public void testDST() {
+		// Daily at 02:30 (does not exist on 2017-03-12)
+		CalendarSchedule cs = lookup(Calendar.DATE, 1, 9000000);
+		long t = cs.computeNextTime(time("2017-03-11T12:00"));
+		assertEquals(time("2017-03-12T03:30"), t);
+		t = cs.computeNextTime(t);
+		assertEquals(time("2017-03-13T02:30"), t);
+		// Daily at 01:00 (occurs twice on 2017-11-05)
+		cs = lookup(Calendar.DATE, 1, 3600000);
+		t = cs.computeNextTime(time("2017-11-04T12:00"));
+		assertEquals(time("2017-11-05T01:00"), t);
+		t = cs.computeNextTime(t);
+		assertEquals(time("2017-11-06T01:00"), t);
+		assertEquals(25 * 3600000, t - time("2017-11-05T01:00"));
+	}
+
+	public void testFixed() {
+		CalendarSchedule cs = lookup(Calendar.MINUTE, 5, 30000);
+		Random r = new Random(1);
+		long now = TimeSteward.currentTimeMillis();
+		for (int i = 0; i < 10000; i++) {
+			long t = now + r.nextInt() * 100L;
+			long p = cs.computePastTime(t);
+			long n = cs.computeNextTime(t);
+			assertTrue(p <= t && t < n);
+			assertEquals(300000, n - p);
+			ZonedDateTime z = ZonedDateTime.ofInstant(
+				Instant.ofEpochMilli(n), CHICAGO);
+			assertEquals(0, z.getMinute() % 5);
+			assertEquals(30, z.getSecond());
+		}
+	}
+
+	public void testShared() {
+		assertSame(lookup(Calendar.SECOND, 30, 0),
+			lookup(Calendar.SECOND, 30, 0));
+	}
+}
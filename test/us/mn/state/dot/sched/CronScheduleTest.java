@@ -0,0 +1,148 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+
+/**
+ * Cron schedule tests
+ *
+ * @author Doug Lau
+ */
+public class CronScheduleTest extends TestCase {
+
+	static private final ZoneId CHICAGO = ZoneId.of("America/Chicago");
+
+	static private long time(String ldt) {
+		return LocalDateTime.parse(ldt).atZone(CHICAGO).toInstant()
+			.toEpochMilli();
+	}
+
+	static private void checkInvalid(String e) {
+		try {
+			new CronSchedule(e);
+			fail(e);
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	private TimeZone tz;
+
+	private VirtualTimeSource vts;
+
+	public CronScheduleTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() {
+		tz = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+		// Setting the time source checks the default time zone again
+		vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+	}
+
+	protected void tearDown() {
+		TimeZone.setDefault(tz);
+		TimeSteward.setTimeSource(new SystemTimeSource());
+		vts.stop();
+	}
+
+	public void testWeekdays() {
+		CronSchedule cs = new CronSchedule("0,30 * 6-9 * * MON-FRI");
+		long t = cs.computeNextTime(time("2017-03-10T09:59:45"));
+		assertEquals(time("2017-03-13T06:00:00"), t);
+		assertEquals(time("2017-03-13T06:00:30"), cs.computeNextTime(t));
+	}
+
+	public void testNextTimes() {
+		CronSchedule cs = new CronSchedule("*/15 * * * *");
+		long[] times = cs.computeNextTimes(time("2017-06-01T12:07:10"),
+			4);
+		assertEquals(time("2017-06-01T12:15"), times[0]);
+		assertEquals(time("2017-06-01T12:30"), times[1]);
+		assertEquals(time("2017-06-01T12:45"), times[2]);
+		assertEquals(time("2017-06-01T13:00"), times[3]);
+	}
+
+	public void testDays() {
+		CronSchedule cs = new CronSchedule("0 0 29 FEB *");
+		assertEquals(time("2020-02-29T00:00"),
+			cs.computeNextTime(time("2017-01-01T00:00")));
+		// Day-of-month or day-of-week
+		cs = new CronSchedule("0 0 13 * FRI");
+		long t = cs.computeNextTime(time("2017-01-01T00:00"));
+		assertEquals(time("2017-01-06T00:00"), t);
+		assertEquals(time("2017-01-13T00:00"), cs.computeNextTime(t));
+		cs = new CronSchedule("0 0 * * 7");
+		assertEquals(time("2017-01-08T00:00"), cs.computeNextTime(t));
+	}
+
+	public void testStepDays() {
+		CronSchedule cs = new CronSchedule("0 0 */2 * *");
+		long[] times = cs.computeNextTimes(time("2017-01-29T12:00"), 3);
+		assertEquals(time("2017-01-31T00:00"), times[0]);
+		assertEquals(time("2017-02-01T00:00"), times[1]);
+		assertEquals(time("2017-02-03T00:00"), times[2]);
+	}
+
+	public void testStepWeekdays() {
+		// 2017-01-01 is a Sunday
+		CronSchedule cs = new CronSchedule("0 0 * * */2");
+		long[] times = cs.computeNextTimes(time("2017-01-01T00:00"), 4);
+		assertEquals(time("2017-01-03T00:00"), times[0]);
+		assertEquals(time("2017-01-05T00:00"), times[1]);
+		assertEquals(time("2017-01-07T00:00"), times[2]);
+		assertEquals(time("2017-01-08T00:00"), times[3]);
+	}
+
+	public void testStepDayWeekday() {
+		// Stepped day-of-month and day-of-week must both match
+		CronSchedule cs = new CronSchedule("0 0 */10 * MON");
+		long[] times = cs.computeNextTimes(time("2017-01-01T00:00"), 3);
+		assertEquals(time("2017-05-01T00:00"), times[0]);
+		assertEquals(time("2017-07-31T00:00"), times[1]);
+		assertEquals(time("2017-08-21T00:00"), times[2]);
+	}
+
+	public void testDST() {
+		CronSchedule cs = new CronSchedule("0 30 2 * * *");
+		long t = cs.computeNextTime(time("2017-03-11T12:00"));
+		assertEquals(time("2017-03-12T03:30"), t);
+		t = cs.computeNextTime(t);
+		assertEquals(time("2017-03-13T02:30"), t);
+	}
+
+	public void testInvalid() {
+		checkInvalid("* * *");
+		checkInvalid("61 * * * *");
+		checkInvalid("* * * * FOO");
+		checkInvalid("*/0 * * * *");
+		checkInvalid("0 0 30 2 *");
+	}
+
+	public void testJob() {
+		Job job = new Job(new CronSchedule("* * * * * *")) {
+			public void perform() {}
+		};
+		assertTrue(job.isRepeating());
+		assertTrue(job.delay() <= 1000);
+	}
+}
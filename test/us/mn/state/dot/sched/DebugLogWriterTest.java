@@ -0,0 +1,111 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+
+/**
+ * Debug log writer tests
+ *
+ * @author Doug Lau
+ */
+public class DebugLogWriterTest extends TestCase {
+
+	protected File dir;
+	protected DebugLog log;
+
+	public DebugLogWriterTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		dir = Files.createTempDirectory("debuglog").toFile();
+		DebugLog.init(dir, "Created DebugLog");
+		File f = new File(dir, "test.log");
+		assertTrue(f.createNewFile());
+		log = new DebugLog("test.log");
+	}
+
+	protected void tearDown() {
+		DebugLog.disableAsync();
+		for (File f: dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	/** Get the sequence numbers of messages in the log file */
+	private ArrayList<Integer> readSeq() throws Exception {
+		ArrayList<Integer> seq = new ArrayList<Integer>();
+		for (String line: Files.readAllLines(log.getFile().toPath())) {
+			int i = line.indexOf(" msg ");
+			if (i >= 0) {
+				seq.add(Integer.parseInt(line.substring(
+					i + 5)));
+			}
+		}
+		return seq;
+	}
+
+	/** Check that the log contains messages 0 to n-1 in order */
+	private void checkSeq(int n) throws Exception {
+		ArrayList<Integer> seq = readSeq();
+		assertEquals(n, seq.size());
+		for (int i = 0; i < n; i++)
+			assertEquals(i, seq.get(i).intValue());
+	}
+
+	public void testOrder() throws Exception {
+		DebugLogWriter w = new DebugLogWriter(2048);
+		w.register(log);
+		for (int i = 0; i < 1000; i++)
+			assertTrue(w.append(log, 0, "msg " + i));
+		// Each batch is flushed without closing
+		for (int i = 0; i < 500 && readSeq().size() < 1000; i++)
+			Thread.sleep(10);
+		checkSeq(1000);
+		w.close();
+	}
+
+	public void testFull() throws Exception {
+		DebugLogWriter w = new DebugLogWriter(4);
+		w.register(log);
+		int n = 0;
+		// Block the writer thread while appending
+		synchronized (log) {
+			while (n < 1000 && w.append(log, 0, "msg " + n))
+				n++;
+			assertTrue(n < 1000);
+			assertFalse(w.append(log, 0, "dropped"));
+		}
+		w.close();
+		// Accepted entries are written; dropped entries are not
+		checkSeq(n);
+	}
+
+	public void testClose() throws Exception {
+		DebugLog.enableAsync();
+		for (int i = 0; i < 1000; i++)
+			log.log("msg " + i);
+		DebugLog.disableAsync();
+		checkSeq(1000);
+		assertEquals(0, log.getDropped());
+		// Logging is synchronous again
+		log.log("msg 1000");
+		checkSeq(1001);
+	}
+}
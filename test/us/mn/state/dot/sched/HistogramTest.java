@@ -0,0 +1,59 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import junit.framework.TestCase;
+
+/**
+ * Histogram tests
+ *
+ * @author Doug Lau
+ */
+public class HistogramTest extends TestCase {
+
+	public HistogramTest(String name) {
+		super(name);
+	}
+
+	public void testExact() {
+		Histogram h = new Histogram();
+		for (int i = 0; i < 10; i++)
+			h.record(i);
+		assertEquals(10, h.getCount());
+		assertEquals(4, h.getPercentile(50));
+		assertEquals(9, h.getPercentile(100));
+		assertEquals(9, h.getMax());
+		assertEquals(4.5, h.getMean(), 0.001);
+	}
+
+	public void testPrecision() {
+		Histogram h = new Histogram();
+		for (int i = 1; i <= 100000; i++)
+			h.record(i);
+		long p50 = h.getPercentile(50);
+		long p99 = h.getPercentile(99);
+		assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125);
+		assertTrue(p99 >= 99000 && p99 <= 100000);
+		assertEquals(100000, h.getPercentile(100));
+	}
+
+	public void testReset() {
+		Histogram h = new Histogram();
+		h.record(1000);
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getPercentile(99));
+	}
+}
@@ -16,6 +16,13 @@ package us.mn.state.dot.sched;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.TestCase;
 
 /** 
@@ -25,6 +32,14 @@ import junit.framework.TestCase;
  */
 public class JobTest extends TestCase {
 
+	/** Time source with an adjustable wall clock */
+	static private class JumpTimeSource extends SystemTimeSource {
+		volatile long jump;
+		public long currentTimeMillis() {
+			return System.currentTimeMillis() + jump;
+		}
+	}
+
 	protected final Scheduler scheduler = new Scheduler();
 
 	public JobTest(String name) {
@@ -48,22 +63,122 @@ public class JobTest extends TestCase {
 		assertTrue(end >= start + 500);
 	}
 
-	public void testRepeating() {
+	public void testWaitTimeout() throws Exception {
+		final Job job = new Job(60000) {
+			public void perform() {}
+		};
+		JobHandle h = scheduler.addJob(job);
+		// Wake up the waiting thread early, many times
+		Thread waker = new Thread() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(20);
+						synchronized (job) {
+							job.notifyAll();
+						}
+					}
+				}
+				catch (InterruptedException e) {
+					// done
+				}
+			}
+		};
+		waker.start();
+		long start = System.currentTimeMillis();
+		try {
+			job.waitForCompletion(500);
+			assertTrue(false);
+		}
+		catch (TimeoutException e) {
+			// expected
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		waker.interrupt();
+		h.cancel();
+		assertTrue("elapsed: " + elapsed, elapsed >= 490);
+	}
+
+	public void testCancel() throws Exception {
 		final ArrayList<Long> times = new ArrayList<Long>();
-		Job job = new Job(Calendar.SECOND, 5) {
+		Job job = new Job(500) {
 			public void perform() {
 				times.add(System.currentTimeMillis());
 			}
 		};
-		scheduler.addJob(job);
-		while (times.size() < 2) {
-			try {
-				Thread.sleep(1000);
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-				assertTrue(false);
+		JobHandle h = scheduler.addJob(job);
+		assertTrue(h.cancel());
+		assertTrue(h.getFuture().isCancelled());
+		Thread.sleep(1000);
+		assertTrue(times.isEmpty());
+	}
+
+	public void testCancelReAdd() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("readd");
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			// Block the scheduler thread
+			JobHandle blocker = sched.addJob(new Job() {
+				public void perform()
+					throws InterruptedException
+				{
+					started.countDown();
+					release.await();
+				}
+			});
+			started.await();
+			sched.setCapacity(1, OverflowPolicy.REJECT, 0);
+			Job job = new Job(Calendar.SECOND, 1) {
+				public void perform() {}
+			};
+			sched.addJob(job);
+			assertEquals(1, sched.size());
+			assertTrue(job.cancel());
+			// Cancelled job is not counted, though still queued
+			assertEquals(0, sched.size());
+			// Re-add the queued job after its next time was missed
+			TimeSteward.sleep(2500);
+			JobHandle h = sched.addJob(job);
+			assertEquals(1, sched.size());
+			assertTrue(job.delay() > 0);
+			assertTrue(h.cancel());
+			assertEquals(0, sched.size());
+			release.countDown();
+			blocker.getFuture().get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+	}
+
+	public void testRepeating() {
+		VirtualTimeSource vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("virtual");
+		final ArrayList<Long> times = new ArrayList<Long>();
+		Job job = new Job(Calendar.SECOND, 5) {
+			public void perform() {
+				times.add(TimeSteward.currentTimeMillis());
 			}
+		};
+		try {
+			sched.addJob(job);
+			while (times.size() < 2)
+				TimeSteward.sleep(1000);
+		}
+		catch (InterruptedException e) {
+			e.printStackTrace();
+			assertTrue(false);
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
 		}
 		long first = times.get(0);
 		long second = times.get(1);
@@ -71,4 +186,614 @@ public class JobTest extends TestCase {
 		System.out.println("Elapsed: " + elapsed);
 		assertTrue(elapsed >= (5000 - 1));
 	}
+
+	public void testPrecisionWait() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("precise");
+		sched.setPrecisionWait(true, 0);
+		final ArrayList<Long> times = new ArrayList<Long>();
+		Job rep = new Job(Calendar.SECOND, 5) {
+			public void perform() {
+				synchronized (times) {
+					times.add(TimeSteward.currentTimeMillis());
+				}
+			}
+		};
+		final long[] ran = new long[1];
+		Job one = new Job(1000) {
+			public void perform() {
+				ran[0] = TimeSteward.currentTimeMillis();
+			}
+		};
+		try {
+			sched.addJob(rep);
+			long start = TimeSteward.currentTimeMillis();
+			// Leader is parked until the repeating job is due
+			sched.addJob(one);
+			one.waitForCompletion(60000);
+			assertTrue(ran[0] - start >= 1000);
+			assertTrue(ran[0] - start < 5000);
+			while (true) {
+				synchronized (times) {
+					if (times.size() >= 3)
+						break;
+				}
+				TimeSteward.sleep(1000);
+			}
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+		for (int i = 1; i < 3; i++)
+			assertEquals(5000, times.get(i) - times.get(i - 1));
+	}
+
+	public void testPrecisionSpinCheck() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("spin");
+		// Spin time longer than the wall clock check interval.
+		// Spinning never ends with a virtual time source.
+		sched.setPrecisionWait(true, 2000000000L);
+		Job far = new Job(10000) {
+			public void perform() {}
+		};
+		final CountDownLatch slept = new CountDownLatch(1);
+		Thread sleeper = new Thread() {
+			public void run() {
+				try {
+					TimeSteward.sleep(3000);
+					slept.countDown();
+				}
+				catch (InterruptedException e) {
+					// test failed
+				}
+			}
+		};
+		try {
+			JobHandle h = sched.addJob(far);
+			sleeper.start();
+			// Leader must park without spinning before each wall
+			// clock check, or the time would never advance
+			assertTrue(slept.await(10, TimeUnit.SECONDS));
+			assertFalse(h.getFuture().isDone());
+		}
+		finally {
+			sleeper.interrupt();
+			sched.removeJob(far);
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+	}
+
+	public void testPoolParallel() throws Exception {
+		Scheduler sched = new Scheduler("pool", null, 4);
+		final CyclicBarrier barrier = new CyclicBarrier(4);
+		final AtomicInteger passed = new AtomicInteger();
+		ArrayList<JobHandle> handles = new ArrayList<JobHandle>();
+		for (int i = 0; i < 4; i++) {
+			handles.add(sched.addJob(new Job(200) {
+				public void perform() throws Exception {
+					barrier.await(10, TimeUnit.SECONDS);
+					passed.incrementAndGet();
+				}
+			}));
+		}
+		for (JobHandle h: handles)
+			h.getFuture().get(30, TimeUnit.SECONDS);
+		assertEquals(4, passed.get());
+		sched.dispose();
+	}
+
+	public void testPoolNoOverlap() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("overlap", null, 4);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger overlaps = new AtomicInteger();
+		final AtomicInteger runs = new AtomicInteger();
+		Job job = new Job(Calendar.SECOND, 1) {
+			public void perform() {
+				if (running.incrementAndGet() > 1)
+					overlaps.incrementAndGet();
+				try {
+					// Run longer than the interval
+					TimeSteward.sleep(2500);
+				}
+				catch (InterruptedException e) {
+					// scheduler disposed
+				}
+				running.decrementAndGet();
+				runs.incrementAndGet();
+			}
+		};
+		job.setMisfirePolicy(MisfirePolicy.CATCH_UP);
+		try {
+			sched.addJob(job);
+			while (runs.get() < 5)
+				TimeSteward.sleep(1000);
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+		assertEquals(0, overlaps.get());
+	}
+
+	public void testWallClockJump() throws Exception {
+		JumpTimeSource ts = new JumpTimeSource();
+		TimeSteward.setTimeSource(ts);
+		try {
+			Scheduler sched = new Scheduler("jump");
+			long start = System.currentTimeMillis();
+			Job job = new Job(500) {
+				public void perform() {}
+			};
+			Job rep = new Job(Calendar.SECOND, 10) {
+				public void perform() {}
+			};
+			sched.addJob(job);
+			ts.jump = -3600 * 1000;
+			job.waitForCompletion(5000);
+			long elapsed = System.currentTimeMillis() - start;
+			assertTrue(elapsed >= 500 && elapsed < 5000);
+			ts.jump = 3600 * 1000 + 5000;
+			rep.reanchor(TimeSteward.monotonicMillis());
+			assertTrue(rep.delay() <= 10000);
+			assertEquals(0, rep.getNextTime() % 10000);
+			assertTrue(rep.getNextTime() > ts.currentTimeMillis());
+			sched.dispose();
+		}
+		finally {
+			TimeSteward.setTimeSource(new SystemTimeSource());
+		}
+	}
+
+	public void testCapacity() throws Exception {
+		Scheduler sched = new Scheduler("capacity");
+		sched.setCapacity(2, OverflowPolicy.DROP_NEWEST, 0);
+		JobHandle[] h = new JobHandle[3];
+		for (int i = 0; i < h.length; i++) {
+			h[i] = sched.addJob(new Job(60000) {
+				public void perform() {}
+			});
+		}
+		assertFalse(h[1].getFuture().isDone());
+		assertTrue(h[2].getFuture().isCancelled());
+		assertNull(sched.tryAddJob(new Job(60000) {
+			public void perform() {}
+		}));
+		sched.setCapacity(2, OverflowPolicy.REJECT, 0);
+		try {
+			sched.addJob(new Job(60000) {
+				public void perform() {}
+			});
+			assertTrue(false);
+		}
+		catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(3, sched.getShedCount());
+		sched.dispose();
+	}
+
+	/** Repeating job which records its run times */
+	static private class SlowJob extends Job {
+		private final ArrayList<Long> times = new ArrayList<Long>();
+		private final long[] runs;
+		private SlowJob(long[] r) {
+			super(Calendar.SECOND, 10);
+			runs = r;
+		}
+		public void perform() {
+			int n = times.size();
+			times.add(TimeSteward.currentTimeMillis());
+			long r = runs[Math.min(n, runs.length - 1)];
+			try {
+				if (r > 0)
+					TimeSteward.sleep(r);
+			}
+			catch (InterruptedException e) {
+				// scheduler disposed
+			}
+		}
+	}
+
+	/** Perform a slow job with virtual time.
+	 * @param p Misfire policy.
+	 * @param runs Execution time of each run (last is repeated).
+	 * @param n Number of runs to wait for.
+	 * @return Job with recorded run times. */
+	private SlowJob runSlowJob(MisfirePolicy p, long[] runs, int n)
+		throws InterruptedException
+	{
+		VirtualTimeSource vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("misfire");
+		SlowJob job = new SlowJob(runs);
+		job.setMisfirePolicy(p);
+		try {
+			sched.addJob(job);
+			while (job.times.size() < n)
+				TimeSteward.sleep(1000);
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+		return job;
+	}
+
+	/** Get run times relative to the first run */
+	static private long[] offsets(SlowJob job, int n) {
+		long[] off = new long[n];
+		for (int i = 0; i < n; i++)
+			off[i] = job.times.get(i) - job.times.get(0);
+		return off;
+	}
+
+	public void testDropOldest() throws Exception {
+		Scheduler sched = new Scheduler("drop");
+		sched.setCapacity(2, OverflowPolicy.DROP_OLDEST, 0);
+		Job rep = new Job(Calendar.HOUR, 1) {
+			public void perform() {}
+		};
+		JobHandle r = sched.addJob(rep);
+		JobHandle[] h = new JobHandle[3];
+		// Oldest job is dropped, even though it is not first due
+		int[] delays = { 50000, 10000, 30000 };
+		for (int i = 0; i < h.length; i++) {
+			h[i] = sched.addJob(new Job(delays[i]) {
+				public void perform() {}
+			});
+		}
+		// Repeating jobs are never dropped
+		assertFalse(r.getFuture().isDone());
+		assertTrue(h[0].getFuture().isCancelled());
+		assertTrue(h[1].getFuture().isCancelled());
+		assertFalse(h[2].getFuture().isDone());
+		assertEquals(2, sched.size());
+		assertEquals(2, sched.getShedCount());
+		sched.dispose();
+	}
+
+	public void testBlockSelf() throws Exception {
+		final Scheduler sched = new Scheduler("block");
+		sched.setCapacity(1, OverflowPolicy.BLOCK, 30000);
+		final AtomicInteger rejected = new AtomicInteger();
+		Job job = new Job(0) {
+			public void perform() {
+				sched.addJob(new Job(60000) {
+					public void perform() {}
+				});
+				try {
+					// Would block forever
+					sched.addJob(new Job(60000) {
+						public void perform() {}
+					});
+				}
+				catch (RejectedExecutionException e) {
+					rejected.incrementAndGet();
+				}
+			}
+		};
+		long start = System.currentTimeMillis();
+		sched.addJob(job);
+		job.waitForCompletion(10000);
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		assertEquals(1, rejected.get());
+		assertEquals(0, sched.getBlockedCount());
+		sched.dispose();
+	}
+
+	public void testMisfireSkip() throws Exception {
+		SlowJob job = runSlowJob(MisfirePolicy.SKIP,
+			new long[] { 25000, 0 }, 3);
+		long[] off = offsets(job, 3);
+		assertEquals(30000, off[1]);
+		assertEquals(40000, off[2]);
+		assertEquals(1, job.getOverrunCount());
+		assertEquals(2, job.getMissedCount());
+	}
+
+	public void testMisfireFireOnce() throws Exception {
+		SlowJob job = runSlowJob(MisfirePolicy.FIRE_ONCE,
+			new long[] { 25000, 0 }, 3);
+		long[] off = offsets(job, 3);
+		assertEquals(25000, off[1]);
+		assertEquals(30000, off[2]);
+		assertEquals(1, job.getOverrunCount());
+		assertEquals(1, job.getMissedCount());
+	}
+
+	public void testMisfireCatchUp() throws Exception {
+		SlowJob job = runSlowJob(MisfirePolicy.CATCH_UP,
+			new long[] { 25000, 0 }, 4);
+		long[] off = offsets(job, 4);
+		assertEquals(25000, off[1]);
+		assertEquals(25000, off[2]);
+		assertEquals(30000, off[3]);
+		assertEquals(1, job.getOverrunCount());
+		assertEquals(0, job.getMissedCount());
+	}
+
+	public void testMisfireCatchUpBurst() throws Exception {
+		// Every run overruns, so bursts must be bounded
+		SlowJob job = runSlowJob(MisfirePolicy.CATCH_UP,
+			new long[] { 15000 }, 8);
+		long[] off = offsets(job, 8);
+		assertEquals(45000, off[3]);
+		// Burst ended; times 40, 50 and 60 s are skipped
+		assertEquals(70000, off[4]);
+		assertEquals(115000, off[7]);
+		assertTrue(job.getMissedCount() >= 3);
+	}
+
+	public void testMisfireStretch() throws Exception {
+		SlowJob job = runSlowJob(MisfirePolicy.STRETCH,
+			new long[] { 9000 }, 12);
+		long[] off = offsets(job, 12);
+		// Runtime approaches interval; runs stretch to every 20 s
+		assertEquals(20000, off[11] - off[10]);
+		assertEquals(0, job.getOverrunCount());
+		assertTrue(job.getMissedCount() > 0);
+	}
+
+	public void testMisfireLateAdd() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("late");
+		try {
+			Job job = new Job(Calendar.SECOND, 1) {
+				public void perform() {}
+			};
+			TimeSteward.sleep(2500);
+			sched.addJob(job);
+			assertTrue(job.delay() > 0);
+			assertEquals(2, job.getMissedCount());
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+	}
+
+	public void testFinishInBatch() throws Exception {
+		Scheduler sched = new Scheduler("finish");
+		// Block the scheduler until both jobs are due
+		final CountDownLatch start = new CountDownLatch(1);
+		sched.addJob(new Job() {
+			public void perform() throws InterruptedException {
+				start.await();
+			}
+		});
+		JobHandle first = sched.addJob(new Job() {
+			public void perform() {}
+		});
+		final CountDownLatch release = new CountDownLatch(1);
+		JobHandle second = sched.addJob(new Job() {
+			public void perform() throws InterruptedException {
+				release.await();
+			}
+		});
+		start.countDown();
+		// First job is finished while the second is running
+		first.getFuture().get(10, TimeUnit.SECONDS);
+		assertFalse(second.getFuture().isDone());
+		release.countDown();
+		second.getFuture().get(10, TimeUnit.SECONDS);
+		sched.dispose();
+	}
+
+	public void testPoolBatch() throws Exception {
+		Scheduler sched = new Scheduler("batch", null, 4);
+		ArrayList<JobHandle> handles = new ArrayList<JobHandle>();
+		for (int i = 0; i < 16; i++) {
+			handles.add(sched.addJob(new Job(200) {
+				public void perform() throws Exception {
+					Thread.sleep(100);
+				}
+			}));
+		}
+		long start = System.currentTimeMillis();
+		for (JobHandle h: handles)
+			h.getFuture().get(30, TimeUnit.SECONDS);
+		long elapsed = System.currentTimeMillis() - start;
+		// Serially, this would take at least 1600 ms
+		assertTrue("elapsed: " + elapsed, elapsed < 1200);
+		sched.dispose();
+	}
+
+	public void testFanOut() throws Exception {
+		Scheduler sched = new Scheduler("fanout");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		sched.setFanOut(pool);
+		// Block the scheduler until all jobs are due
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		sched.addJob(new Job() {
+			public void perform() throws InterruptedException {
+				started.countDown();
+				latch.await();
+			}
+		});
+		started.await();
+		final CyclicBarrier barrier = new CyclicBarrier(4);
+		final AtomicInteger passed = new AtomicInteger();
+		ArrayList<JobHandle> handles = new ArrayList<JobHandle>();
+		for (int i = 0; i < 4; i++) {
+			handles.add(sched.addJob(new Job() {
+				public void perform() throws Exception {
+					barrier.await(10, TimeUnit.SECONDS);
+					passed.incrementAndGet();
+				}
+			}));
+		}
+		final Thread[] serial = new Thread[1];
+		handles.add(sched.addJob(new Job() {
+			public void perform() {
+				serial[0] = Thread.currentThread();
+			}
+			public boolean requiresSchedulerThread() {
+				return true;
+			}
+		}));
+		latch.countDown();
+		for (JobHandle h: handles)
+			h.getFuture().get(30, TimeUnit.SECONDS);
+		assertEquals(4, passed.get());
+		assertEquals("fanout", serial[0].getName());
+		sched.dispose();
+		pool.shutdown();
+	}
+
+	public void testWatchdog() throws Exception {
+		final ArrayList<Exception> errors = new ArrayList<Exception>();
+		Scheduler sched = new Scheduler("watchdog",
+			new ExceptionHandler() {
+				public boolean handle(Exception e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+					return true;
+				}
+			});
+		sched.setWatchdog(200, 200);
+		// Block the scheduler until the hung job and next job are due
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch start = new CountDownLatch(1);
+		sched.addJob(new Job() {
+			public void perform() throws InterruptedException {
+				started.countDown();
+				start.await();
+			}
+		});
+		started.await();
+		final CountDownLatch release = new CountDownLatch(1);
+		JobHandle hung = sched.addJob(new Job() {
+			public void perform() {
+				// Ignore interrupts, like a socket read
+				while (true) {
+					try {
+						release.await();
+						return;
+					}
+					catch (InterruptedException e) {
+						// keep waiting
+					}
+				}
+			}
+		});
+		JobHandle next = sched.addJob(new Job() {
+			public void perform() {}
+		});
+		start.countDown();
+		next.getFuture().get(10, TimeUnit.SECONDS);
+		assertFalse(hung.getFuture().isDone());
+		assertEquals(1, sched.getHungCount());
+		assertEquals(1, sched.getTakeoverCount());
+		synchronized (errors) {
+			assertTrue(errors.get(0) instanceof TimeoutException);
+			assertTrue(errors.get(0).getStackTrace().length > 0);
+		}
+		// Scheduler keeps running on the fresh thread
+		sched.addJob(new Job(50) {
+			public void perform() {}
+		}).getFuture().get(10, TimeUnit.SECONDS);
+		release.countDown();
+		hung.getFuture().get(10, TimeUnit.SECONDS);
+		sched.dispose();
+	}
+
+	public void testWatchdogMidBatch() throws Exception {
+		final Scheduler sched = new Scheduler("watchdog",
+			new ExceptionHandler() {
+				public boolean handle(Exception e) {
+					return true;
+				}
+			});
+		sched.setWatchdog(200, 200);
+		// Block the scheduler until all jobs are due
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch start = new CountDownLatch(1);
+		sched.addJob(new Job() {
+			public void perform() throws InterruptedException {
+				started.countDown();
+				start.await();
+			}
+		});
+		started.await();
+		final ArrayList<String> order = new ArrayList<String>();
+		final AtomicInteger runs = new AtomicInteger();
+		final AtomicInteger other = new AtomicInteger();
+		Job rep = new Job(Calendar.SECOND, 1, true) {
+			public void perform() {
+				// Fresh threads are also scheduler threads
+				if (!sched.isCurrentThread())
+					other.incrementAndGet();
+				if (runs.incrementAndGet() == 1) {
+					synchronized (order) {
+						order.add("rep");
+					}
+				}
+			}
+		};
+		sched.addJob(rep);
+		// Repeating job sorts after one-shot jobs with equal deadlines
+		Thread.sleep(5);
+		JobHandle quick = sched.addJob(new Job() {
+			public void perform() {
+				synchronized (order) {
+					order.add("quick");
+				}
+			}
+		});
+		final CountDownLatch release = new CountDownLatch(1);
+		JobHandle hung = sched.addJob(new Job() {
+			public void perform() {
+				synchronized (order) {
+					order.add("hung");
+				}
+				while (true) {
+					try {
+						release.await();
+						return;
+					}
+					catch (InterruptedException e) {
+						// keep waiting
+					}
+				}
+			}
+		});
+		JobHandle next = sched.addJob(new Job() {
+			public void perform() {}
+		});
+		start.countDown();
+		next.getFuture().get(10, TimeUnit.SECONDS);
+		assertTrue(quick.getFuture().isDone());
+		// Hung job was not first in its batch
+		synchronized (order) {
+			assertEquals("rep", order.get(0));
+			assertEquals("quick", order.get(1));
+			assertEquals("hung", order.get(2));
+		}
+		assertEquals(1, sched.getTakeoverCount());
+		// Job before the hung one keeps repeating
+		for (int i = 0; i < 500 && runs.get() < 3; i++)
+			Thread.sleep(10);
+		assertTrue(runs.get() >= 3);
+		assertEquals(0, other.get());
+		assertFalse(hung.getFuture().isDone());
+		release.countDown();
+		hung.getFuture().get(10, TimeUnit.SECONDS);
+		rep.cancel();
+		sched.dispose();
+	}
 }
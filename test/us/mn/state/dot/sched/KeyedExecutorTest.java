@@ -0,0 +1,158 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Keyed executor tests
+ *
+ * @author Doug Lau
+ */
+public class KeyedExecutorTest extends TestCase {
+
+	protected final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+	/** Executor which swallows task exceptions */
+	protected final Executor quiet = new Executor() {
+		public void execute(final Runnable r) {
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						r.run();
+					}
+					catch (IllegalStateException e) {
+						// expected
+					}
+				}
+			});
+		}
+	};
+
+	public KeyedExecutorTest(String name) {
+		super(name);
+	}
+
+	protected void tearDown() {
+		pool.shutdownNow();
+	}
+
+	public void testSerialOrder() throws Exception {
+		KeyedExecutor ex = new KeyedExecutor(pool);
+		final int n_keys = 4;
+		final int n_tasks = 1000;
+		final ArrayList<List<Integer>> seqs =
+			new ArrayList<List<Integer>>();
+		final AtomicBoolean[] busy = new AtomicBoolean[n_keys];
+		final AtomicInteger overlaps = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(n_keys*n_tasks);
+		for (int k = 0; k < n_keys; k++) {
+			seqs.add(Collections.synchronizedList(
+				new ArrayList<Integer>()));
+			busy[k] = new AtomicBoolean();
+		}
+		for (int i = 0; i < n_keys * n_tasks; i++) {
+			final int k = i % n_keys;
+			final int s = i / n_keys;
+			ex.execute(k, new Runnable() {
+				public void run() {
+					if (!busy[k].compareAndSet(false, true))
+						overlaps.incrementAndGet();
+					seqs.get(k).add(s);
+					busy[k].set(false);
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertEquals(0, overlaps.get());
+		for (List<Integer> seq: seqs) {
+			assertEquals(n_tasks, seq.size());
+			for (int s = 0; s < n_tasks; s++)
+				assertEquals(s, seq.get(s).intValue());
+		}
+	}
+
+	public void testThrow() throws Exception {
+		KeyedExecutor ex = new KeyedExecutor(quiet);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ArrayList<Integer> seq = new ArrayList<Integer>();
+		final CountDownLatch done = new CountDownLatch(1);
+		ex.execute("key", new Runnable() {
+			public void run() {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					// shut down
+				}
+				throw new IllegalStateException("fail");
+			}
+		});
+		// Queue tasks behind the one which throws
+		for (int i = 0; i < 3; i++) {
+			final int s = i;
+			ex.execute("key", new Runnable() {
+				public void run() {
+					seq.add(s);
+					if (1 == s)
+						throw new IllegalStateException("fail");
+				}
+			});
+		}
+		release.countDown();
+		// The key must be released after tasks throw
+		ex.execute("key", new Runnable() {
+			public void run() {
+				seq.add(3);
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(4, seq.size());
+		for (int s = 0; s < 4; s++)
+			assertEquals(s, seq.get(s).intValue());
+	}
+
+	public void testRejected() throws Exception {
+		KeyedExecutor ex = new KeyedExecutor(new Executor() {
+			public void execute(Runnable r) {
+				throw new RejectedExecutionException();
+			}
+		});
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger ran = new AtomicInteger();
+		for (int i = 0; i < 2; i++) {
+			ex.execute("key", new Runnable() {
+				public void run() {
+					if (Thread.currentThread() == caller)
+						ran.incrementAndGet();
+				}
+			});
+		}
+		assertEquals(2, ran.get());
+	}
+}
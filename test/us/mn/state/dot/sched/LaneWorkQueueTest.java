@@ -0,0 +1,92 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import junit.framework.TestCase;
+
+/**
+ * Lane work queue tests
+ *
+ * @author Doug Lau
+ */
+public class LaneWorkQueueTest extends TestCase {
+
+	static private Work createWork(final WorkPriority p) {
+		return new Work() {
+			protected void perform() {}
+			public WorkPriority getPriority() {
+				return p;
+			}
+		};
+	}
+
+	static private WorkPriority drain(WorkQueue q) throws Exception {
+		Work[] batch = new Work[1];
+		assertEquals(1, q.drain(batch));
+		return batch[0].getPriority();
+	}
+
+	public LaneWorkQueueTest(String name) {
+		super(name);
+	}
+
+	public void testUrgent() throws Exception {
+		LaneWorkQueue q = new LaneWorkQueue();
+		for (int i = 0; i < 1000; i++)
+			q.add(createWork(WorkPriority.LOW));
+		drain(q);
+		q.add(createWork(WorkPriority.URGENT));
+		assertEquals(1000, q.size());
+		assertEquals(WorkPriority.URGENT, drain(q));
+		assertEquals(0, q.getDepth(WorkPriority.URGENT));
+		assertEquals(999, q.getDepth(WorkPriority.LOW));
+		assertEquals(1, q.getWaitTimes(WorkPriority.URGENT).getCount());
+		assertEquals(1, q.getWaitTimes(WorkPriority.LOW).getCount());
+	}
+
+	public void testWeighted() throws Exception {
+		LaneWorkQueue q = new LaneWorkQueue();
+		for (int i = 0; i < 100; i++) {
+			q.add(createWork(WorkPriority.HIGH));
+			q.add(createWork(WorkPriority.LOW));
+		}
+		int low = 0;
+		for (int i = 0; i < 50; i++) {
+			if (drain(q) == WorkPriority.LOW)
+				low++;
+		}
+		// HIGH weight 4, LOW weight 1
+		assertEquals(10, low);
+	}
+
+	public void testPoll() throws Exception {
+		LaneWorkQueue q = new LaneWorkQueue();
+		assertNull(q.poll());
+		q.add(createWork(WorkPriority.LOW));
+		Thread.sleep(1);
+		q.add(createWork(WorkPriority.URGENT));
+		// Oldest work is polled first, not highest priority
+		assertEquals(WorkPriority.LOW, q.poll().getPriority());
+		assertEquals(WorkPriority.URGENT, q.poll().getPriority());
+		assertNull(q.poll());
+	}
+
+	public void testWorker() throws Exception {
+		Worker worker = new Worker("lanes", null, new LaneWorkQueue());
+		Work w = createWork(WorkPriority.HIGH);
+		worker.addWork(w).get();
+		worker.dispose();
+	}
+}
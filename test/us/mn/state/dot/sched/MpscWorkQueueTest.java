@@ -0,0 +1,148 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * MPSC work queue tests
+ *
+ * @author Doug Lau
+ */
+public class MpscWorkQueueTest extends TestCase {
+
+	/** Work with a producer and sequence number */
+	static private class SeqWork extends Work {
+		private final int producer;
+		private final int seq;
+		private SeqWork(int p, int s) {
+			producer = p;
+			seq = s;
+		}
+		protected void perform() {}
+	}
+
+	public MpscWorkQueueTest(String name) {
+		super(name);
+	}
+
+	public void testFifo() throws Exception {
+		MpscWorkQueue q = new MpscWorkQueue();
+		for (int i = 0; i < 100; i++)
+			q.add(new SeqWork(0, i));
+		Work[] batch = new Work[1];
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, q.drain(batch));
+			assertEquals(i, ((SeqWork) batch[0]).seq);
+		}
+		assertEquals(0, q.size());
+	}
+
+	public void testBatch() throws Exception {
+		MpscWorkQueue q = new MpscWorkQueue();
+		for (int i = 0; i < 100; i++)
+			q.add(new SeqWork(0, i));
+		assertEquals(100, q.size());
+		Work[] batch = new Work[64];
+		assertEquals(64, q.drain(batch));
+		// Drained work is no longer counted
+		assertEquals(36, q.size());
+		assertEquals(63, ((SeqWork) batch[63]).seq);
+		assertEquals(36, q.drain(batch));
+		assertEquals(64, ((SeqWork) batch[0]).seq);
+		assertEquals(0, q.size());
+	}
+
+	public void testPoll() throws Exception {
+		MpscWorkQueue q = new MpscWorkQueue();
+		assertNull(q.poll());
+		for (int i = 0; i < 4; i++)
+			q.add(new SeqWork(0, i));
+		// Oldest work is polled first
+		assertEquals(0, ((SeqWork) q.poll()).seq);
+		assertEquals(3, q.size());
+		Work[] batch = new Work[64];
+		assertEquals(3, q.drain(batch));
+		assertEquals(1, ((SeqWork) batch[0]).seq);
+		assertNull(q.poll());
+		assertEquals(0, q.size());
+	}
+
+	public void testProducers() throws Exception {
+		final MpscWorkQueue q = new MpscWorkQueue();
+		final int n_prod = 4;
+		final int n_work = 10000;
+		Thread[] producers = new Thread[n_prod];
+		for (int p = 0; p < n_prod; p++) {
+			final int pr = p;
+			producers[p] = new Thread() {
+				public void run() {
+					for (int i = 0; i < n_work; i++)
+						q.add(new SeqWork(pr, i));
+				}
+			};
+			producers[p].start();
+		}
+		// Each producer's work must be drained in order
+		int[] next = new int[n_prod];
+		Work[] batch = new Work[64];
+		int total = 0;
+		while (total < n_prod * n_work) {
+			int n = q.drain(batch);
+			for (int i = 0; i < n; i++) {
+				SeqWork w = (SeqWork) batch[i];
+				assertEquals(next[w.producer], w.seq);
+				next[w.producer]++;
+			}
+			total += n;
+		}
+		for (Thread t: producers)
+			t.join();
+		assertEquals(0, q.size());
+	}
+
+	public void testPark() throws Exception {
+		final MpscWorkQueue q = new MpscWorkQueue();
+		final AtomicInteger drained = new AtomicInteger();
+		Thread consumer = new Thread() {
+			public void run() {
+				Work[] batch = new Work[64];
+				try {
+					while (true)
+						drained.addAndGet(q.drain(batch));
+				}
+				catch (InterruptedException e) {
+					drained.set(-drained.get());
+				}
+			}
+		};
+		consumer.start();
+		// Wait for consumer to park on the empty queue
+		while (consumer.getState() != Thread.State.WAITING)
+			Thread.sleep(10);
+		q.add(new SeqWork(0, 0));
+		for (int i = 0; i < 500 && drained.get() < 1; i++)
+			Thread.sleep(10);
+		assertEquals(1, drained.get());
+		// Interrupt wakes a parked consumer
+		while (consumer.getState() != Thread.State.WAITING)
+			Thread.sleep(10);
+		consumer.interrupt();
+		consumer.join(5000);
+		assertFalse(consumer.isAlive());
+		assertEquals(-1, drained.get());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Scheduler tests
+ *
+ * @author Doug Lau
+ */
+public class SchedulerTest extends TestCase {
+
+	/** Job with a serialization key */
+	static private class KeyedJob extends Job {
+		private final Integer key;
+		private final int seq;
+		private final AtomicBoolean busy;
+		private final List<Integer> seqs;
+		private final AtomicInteger errors;
+		private final Scheduler owner;
+		private KeyedJob(Integer k, int s, AtomicBoolean b,
+			List<Integer> sq, AtomicInteger e, Scheduler sc)
+		{
+			key = k;
+			seq = s;
+			busy = b;
+			seqs = sq;
+			errors = e;
+			owner = sc;
+		}
+		public void perform() throws Exception {
+			if (!busy.compareAndSet(false, true))
+				errors.incrementAndGet();
+			String t = Thread.currentThread().getName();
+			if (!t.startsWith("exec"))
+				errors.incrementAndGet();
+			if (!owner.isCurrentThread())
+				errors.incrementAndGet();
+			seqs.add(seq);
+			Thread.sleep(1);
+			busy.set(false);
+		}
+		public Object getKey() {
+			return key;
+		}
+	}
+
+	public SchedulerTest(String name) {
+		super(name);
+	}
+
+	public void testExecutor() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4,
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "exec");
+				}
+			});
+		Scheduler sched = new Scheduler("executor");
+		sched.setExecutor(pool);
+		final int n_keys = 3;
+		final int n_jobs = 50;
+		AtomicInteger errors = new AtomicInteger();
+		ArrayList<List<Integer>> seqs = new ArrayList<List<Integer>>();
+		AtomicBoolean[] busy = new AtomicBoolean[n_keys];
+		for (int k = 0; k < n_keys; k++) {
+			seqs.add(Collections.synchronizedList(
+				new ArrayList<Integer>()));
+			busy[k] = new AtomicBoolean();
+		}
+		ArrayList<CompletableFuture<Job>> futures =
+			new ArrayList<CompletableFuture<Job>>();
+		try {
+			for (int i = 0; i < n_keys * n_jobs; i++) {
+				int k = i % n_keys;
+				futures.add(sched.addJob(new KeyedJob(k,
+					i / n_keys, busy[k], seqs.get(k),
+					errors, sched)).getFuture());
+			}
+			for (CompletableFuture<Job> f: futures)
+				f.get(30, TimeUnit.SECONDS);
+		}
+		finally {
+			sched.dispose();
+			pool.shutdown();
+		}
+		// Jobs ran on the executor, for the scheduler, without overlap
+		assertEquals(0, errors.get());
+		assertFalse(sched.isCurrentThread());
+		for (List<Integer> seq: seqs) {
+			assertEquals(n_jobs, seq.size());
+			for (int s = 0; s < n_jobs; s++)
+				assertEquals(s, seq.get(s).intValue());
+		}
+	}
+}
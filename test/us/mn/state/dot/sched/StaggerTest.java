@@ -0,0 +1,123 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Stagger tests
+ *
+ * @author Doug Lau
+ */
+public class StaggerTest extends TestCase {
+
+	/** Job with a 10 second interval */
+	static private class TenSecondJob extends Job {
+		private final ArrayList<Long> times = new ArrayList<Long>();
+		private TenSecondJob() {
+			super(Calendar.SECOND, 10);
+		}
+		public void perform() {
+			times.add(TimeSteward.currentTimeMillis());
+		}
+	}
+
+	/** Get the offset of a job's next time within its interval */
+	static private long offset(Job job) {
+		return job.getNextTime() % 10000;
+	}
+
+	public StaggerTest(String name) {
+		super(name);
+	}
+
+	public void testAdd() {
+		Stagger st = new Stagger();
+		Job[] jobs = new Job[4];
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new TenSecondJob();
+			assertTrue(st.add(jobs[i], 0));
+			jobs[i].computeNextTime();
+		}
+		assertEquals(0, offset(jobs[0]));
+		assertEquals(5000, offset(jobs[1]));
+		assertEquals(2500, offset(jobs[2]));
+		assertEquals(7500, offset(jobs[3]));
+		Job off = new Job(Calendar.SECOND, 10, Calendar.SECOND, 1) {
+			public void perform() {}
+		};
+		assertFalse(st.add(off, 0));
+		Job daily = new Job(Calendar.DATE, 1) {
+			public void perform() {}
+		};
+		assertFalse(st.add(daily, 0));
+	}
+
+	public void testRebalance() {
+		Stagger st = new Stagger();
+		Job[] jobs = new Job[4];
+		for (int i = 0; i < jobs.length; i++) {
+			jobs[i] = new TenSecondJob();
+			st.add(jobs[i], 0);
+		}
+		jobs[1].schedule(new AtomicInteger());
+		jobs[1].cancel();
+		st.remove(jobs[1]);
+		// Not rebalanced until an interval has passed
+		st.check(jobs[0], 9999);
+		jobs[2].computeNextTime();
+		assertEquals(2500, offset(jobs[2]));
+		st.check(jobs[0], 10000);
+		jobs[0].computeNextTime();
+		jobs[2].computeNextTime();
+		jobs[3].computeNextTime();
+		assertEquals(0, offset(jobs[0]));
+		assertEquals(3330, offset(jobs[2]));
+		assertEquals(6660, offset(jobs[3]));
+	}
+
+	public void testScheduler() throws Exception {
+		VirtualTimeSource vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+		Scheduler sched = new Scheduler("stagger");
+		sched.setStagger(true);
+		TenSecondJob[] jobs = new TenSecondJob[4];
+		try {
+			for (int i = 0; i < jobs.length; i++) {
+				jobs[i] = new TenSecondJob();
+				sched.addJob(jobs[i]);
+			}
+			TimeSteward.sleep(60000);
+		}
+		finally {
+			sched.dispose();
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+		TreeSet<Long> offsets = new TreeSet<Long>();
+		for (TenSecondJob job: jobs) {
+			assertTrue(job.times.size() >= 5);
+			long o = job.times.get(0) % 10000;
+			offsets.add(o);
+			for (long t: job.times)
+				assertEquals(o, t % 10000);
+		}
+		assertEquals(4, offsets.size());
+	}
+}
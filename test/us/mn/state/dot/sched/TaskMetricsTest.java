@@ -0,0 +1,162 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+
+/**
+ * Task metrics tests
+ *
+ * @author Doug Lau
+ */
+public class TaskMetricsTest extends TestCase {
+
+	/** Job with a name */
+	static private class PingJob extends Job {
+		public void perform() {}
+	}
+
+	/** Job which throws an exception */
+	static private class FailJob extends Job {
+		public void perform() throws Exception {
+			throw new Exception("fail");
+		}
+	}
+
+	/** Exceptions handled by schedulers */
+	private final ArrayList<Exception> errors = new ArrayList<Exception>();
+
+	/** Exception handler */
+	private final ExceptionHandler handler = new ExceptionHandler() {
+		public boolean handle(Exception e) {
+			synchronized (errors) {
+				errors.add(e);
+			}
+			return true;
+		}
+	};
+
+	/** Platform MBean server */
+	private final MBeanServer server =
+		ManagementFactory.getPlatformMBeanServer();
+
+	public TaskMetricsTest(String name) {
+		super(name);
+	}
+
+	/** Query object names of a scheduler */
+	private Set<ObjectName> query(String name) throws Exception {
+		ObjectName on = new ObjectName("us.mn.state.dot.sched:" +
+			"type=Scheduler,name=" + ObjectName.quote(name) + ",*");
+		return server.queryNames(on, null);
+	}
+
+	/** Find the object name of a task */
+	private ObjectName findTask(String name, String task)
+		throws Exception
+	{
+		String t = ObjectName.quote(task);
+		for (ObjectName on: query(name)) {
+			if (t.equals(on.getKeyProperty("task")))
+				return on;
+		}
+		return null;
+	}
+
+	public void testRecord() throws Exception {
+		Scheduler sched = new Scheduler("metrics", handler);
+		try {
+			sched.enableMetrics();
+			TaskMetrics tm = sched.getMetrics();
+			assertNotNull(tm);
+			for (int i = 0; i < 3; i++) {
+				sched.addJob(new PingJob()).getFuture()
+					.get(10, TimeUnit.SECONDS);
+			}
+			try {
+				sched.addJob(new FailJob()).getFuture()
+					.get(10, TimeUnit.SECONDS);
+				fail("job did not fail");
+			}
+			catch (Exception e) {
+				// expected
+			}
+			TaskStats ts = tm.getStats("PingJob");
+			assertNotNull(ts);
+			assertEquals(3, ts.getRunCount());
+			assertEquals(0, ts.getExceptionCount());
+			assertTrue(ts.getRuntimeMax() >= ts.getRuntime50());
+			TaskStats fs = tm.getStats("FailJob");
+			assertEquals(1, fs.getRunCount());
+			assertEquals(1, fs.getExceptionCount());
+			// Read the same values through the MBean server
+			ObjectName on = findTask("metrics", "PingJob");
+			assertNotNull(on);
+			assertEquals(3L, server.getAttribute(on, "RunCount"));
+			on = findTask("metrics", "FailJob");
+			assertEquals(1L, server.getAttribute(on,
+				"ExceptionCount"));
+			ts.reset();
+			assertEquals(0, ts.getRunCount());
+		}
+		finally {
+			sched.dispose();
+		}
+		synchronized (errors) {
+			assertEquals(1, errors.size());
+		}
+	}
+
+	public void testSameName() throws Exception {
+		Scheduler s0 = new Scheduler("same", handler);
+		Scheduler s1 = new Scheduler("same", handler);
+		try {
+			s0.enableMetrics();
+			s1.enableMetrics();
+			assertEquals(2, query("same").size());
+			s0.addJob(new PingJob()).getFuture()
+				.get(10, TimeUnit.SECONDS);
+			s1.addJob(new PingJob()).getFuture()
+				.get(10, TimeUnit.SECONDS);
+			assertEquals(4, query("same").size());
+		}
+		finally {
+			s0.dispose();
+			s1.dispose();
+		}
+		synchronized (errors) {
+			assertTrue(errors.isEmpty());
+		}
+	}
+
+	public void testUnregister() throws Exception {
+		Scheduler sched = new Scheduler("gone", handler);
+		sched.enableMetrics();
+		sched.addJob(new PingJob()).getFuture()
+			.get(10, TimeUnit.SECONDS);
+		assertEquals(2, query("gone").size());
+		sched.dispose();
+		assertTrue(query("gone").isEmpty());
+		synchronized (errors) {
+			assertTrue(errors.isEmpty());
+		}
+	}
+}
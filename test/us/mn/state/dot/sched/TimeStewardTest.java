@@ -0,0 +1,142 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.locks.LockSupport;
+import junit.framework.TestCase;
+
+/**
+ * Time steward tests
+ *
+ * @author Doug Lau
+ */
+public class TimeStewardTest extends TestCase {
+
+	static private String format(String f, long t, TimeZone tz) {
+		SimpleDateFormat sdf = new SimpleDateFormat(f);
+		sdf.setTimeZone(tz);
+		return sdf.format(new Date(t));
+	}
+
+	static private int secondOfDay(long t) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(t);
+		return cal.get(Calendar.HOUR_OF_DAY) * 3600 +
+		       cal.get(Calendar.MINUTE) * 60 +
+		       cal.get(Calendar.SECOND);
+	}
+
+	private TimeZone tz;
+
+	private VirtualTimeSource vts;
+
+	public TimeStewardTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() {
+		tz = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+		// Setting the time source checks the default time zone again
+		vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+	}
+
+	protected void tearDown() {
+		TimeZone.setDefault(tz);
+		TimeSteward.setTimeSource(new SystemTimeSource());
+		vts.stop();
+	}
+
+	private void checkTime(long t) {
+		TimeZone local = TimeZone.getDefault();
+		TimeZone utc = TimeZone.getTimeZone("UTC");
+		assertEquals(format("yyyy-MM-dd HH:mm:ss", t, local),
+			TimeSteward.dateTimeString(t, true));
+		assertEquals(format("yyyy-MM-dd HH:mm:ss", t, utc),
+			TimeSteward.dateTimeString(t, false));
+		assertEquals(format("yyyyMMdd", t, local),
+			TimeSteward.dateShortString(t));
+		assertEquals(format("HH:mm:ss", t, local),
+			TimeSteward.timeShortString(t));
+		assertEquals(secondOfDay(t), TimeSteward.secondOfDayInt(t));
+	}
+
+	public void testRandom() throws Exception {
+		Random r = new Random(1);
+		long now = TimeSteward.currentTimeMillis();
+		for (int i = 0; i < 10000; i++)
+			checkTime(now + r.nextInt() * 100L);
+		for (int i = 0; i < 10000; i++)
+			checkTime(now + i * 997L);
+	}
+
+	public void testDST() throws Exception {
+		// 2017-03-12 02:00 CST -> 03:00 CDT
+		long spring = 1489305600000L;
+		// 2017-11-05 02:00 CDT -> 01:00 CST
+		long fall = 1509865200000L;
+		for (long t = -7200000; t < 7200000; t += 1000) {
+			checkTime(spring + t);
+			checkTime(fall + t);
+		}
+	}
+
+	public void testDefaultMethods() throws Exception {
+		TimeSource ts = new TimeSource() {
+			public long currentTimeMillis() {
+				return 0;
+			}
+			public void sleep(long millis) {}
+			public void wait(Object monitor, long ms) {}
+		};
+		long n0 = System.nanoTime();
+		long n = ts.nanoTime();
+		assertTrue(n - n0 >= 0);
+		assertTrue(System.nanoTime() - n >= 0);
+		// Park is unparked by another thread
+		final Thread t = Thread.currentThread();
+		Thread unparker = new Thread() {
+			public void run() {
+				LockSupport.unpark(t);
+			}
+		};
+		unparker.start();
+		ts.parkNanos(this, 10000000000L);
+		assertTrue(System.nanoTime() - n0 < 5000000000L);
+		unparker.join();
+	}
+
+	public void testZoneChange() throws Exception {
+		long now = TimeSteward.currentTimeMillis();
+		checkTime(now);
+		TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+		// Old zone is still cached until the next check
+		assertEquals(ZoneId.of("America/Chicago"),
+			TimeSteward.localZone());
+		// Let the default time zone be checked again (virtual time)
+		TimeSteward.sleep(1100);
+		assertEquals(ZoneId.of("Asia/Kolkata"),
+			TimeSteward.localZone());
+		checkTime(now);
+		checkTime(TimeSteward.currentTimeMillis());
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Timing wheel tests
+ *
+ * @author Doug Lau
+ */
+public class TimingWheelTest extends TestCase {
+
+	static private Job createJob(int ms) {
+		return new Job(ms) {
+			public void perform() {}
+		};
+	}
+
+	public TimingWheelTest(String name) {
+		super(name);
+	}
+
+	public void testOrder() {
+		Random r = new Random(1);
+		long now = TimeSteward.monotonicMillis();
+		TimingWheel wheel = new TimingWheel();
+		wheel.poll(now);
+		for (int i = 0; i < 10000; i++)
+			wheel.add(createJob(r.nextInt(24 * 3600 * 1000)));
+		assertEquals(10000, wheel.size());
+		long last = 0;
+		for (Job j = wheel.poll(Long.MAX_VALUE); j != null;
+		     j = wheel.poll(Long.MAX_VALUE))
+		{
+			assertTrue(j.getDeadline() >= last);
+			last = j.getDeadline();
+		}
+		assertTrue(wheel.isEmpty());
+	}
+
+	public void testPollNotDue() {
+		long now = TimeSteward.monotonicMillis();
+		TimingWheel wheel = new TimingWheel();
+		wheel.poll(now);
+		Job job = createJob(100000);
+		wheel.add(job);
+		assertNull(wheel.poll(now));
+		assertTrue(wheel.firstTime() <= job.getDeadline());
+		assertNull(wheel.poll(job.getDeadline() - 1));
+		assertSame(job, wheel.poll(job.getDeadline()));
+		assertEquals(Long.MAX_VALUE, wheel.firstTime());
+	}
+
+	public void testRemove() {
+		long now = TimeSteward.monotonicMillis();
+		TimingWheel wheel = new TimingWheel();
+		wheel.poll(now);
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 1000; i++) {
+			Job j = createJob(i * 37);
+			jobs.add(j);
+			wheel.add(j);
+		}
+		for (int i = 0; i < jobs.size(); i += 2)
+			assertTrue(wheel.remove(jobs.get(i)));
+		assertFalse(wheel.remove(jobs.get(0)));
+		assertEquals(500, wheel.size());
+		for (int i = 1; i < jobs.size(); i += 2)
+			assertSame(jobs.get(i), wheel.poll(Long.MAX_VALUE));
+		assertTrue(wheel.isEmpty());
+	}
+
+	/** Poll all due jobs from a queue */
+	static private ArrayList<Job> pollAll(JobQueue q, long now) {
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		for (Job j = q.poll(now); j != null; j = q.poll(now))
+			jobs.add(j);
+		return jobs;
+	}
+
+	public void testSameMillisecond() {
+		// Time stands still while this thread is busy
+		VirtualTimeSource vts = new VirtualTimeSource();
+		TimeSteward.setTimeSource(vts);
+		try {
+			// Deadlines on each of the first three wheel levels
+			checkSameMillisecond(10);
+			checkSameMillisecond(100);
+			checkSameMillisecond(5000);
+		}
+		finally {
+			TimeSteward.setTimeSource(new SystemTimeSource());
+			vts.stop();
+		}
+	}
+
+	private void checkSameMillisecond(int ms) {
+		long now = TimeSteward.monotonicMillis();
+		TimingWheel wheel = new TimingWheel();
+		TreeJobQueue tree = new TreeJobQueue();
+		wheel.poll(now);
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 5; i++) {
+			Job j = createJob(ms);
+			assertEquals(now + ms, j.getDeadline());
+			jobs.add(j);
+			wheel.add(j);
+			tree.add(j);
+		}
+		assertEquals(jobs, pollAll(tree, now + ms));
+		assertEquals(jobs, pollAll(wheel, now + ms));
+	}
+
+	public void testExpired() {
+		long now = TimeSteward.monotonicMillis();
+		TimingWheel wheel = new TimingWheel();
+		TreeJobQueue tree = new TreeJobQueue();
+		wheel.poll(now + 1000);
+		ArrayList<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < 5; i++) {
+			Job j = createJob(i * 10);
+			jobs.add(j);
+			wheel.add(j);
+			tree.add(j);
+		}
+		assertEquals(jobs, pollAll(tree, now + 1000));
+		assertEquals(jobs, pollAll(wheel, now + 1000));
+	}
+}
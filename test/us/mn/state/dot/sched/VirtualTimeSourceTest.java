@@ -0,0 +1,88 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import junit.framework.TestCase;
+
+/**
+ * Virtual time source tests
+ *
+ * @author Doug Lau
+ */
+public class VirtualTimeSourceTest extends TestCase {
+
+	private VirtualTimeSource vts;
+
+	public VirtualTimeSourceTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() {
+		vts = new VirtualTimeSource(1500000000000L);
+		TimeSteward.setTimeSource(vts);
+	}
+
+	protected void tearDown() {
+		TimeSteward.setTimeSource(new SystemTimeSource());
+		vts.stop();
+	}
+
+	public void testSleep() throws Exception {
+		long start = System.currentTimeMillis();
+		TimeSteward.sleep(3600 * 1000);
+		assertEquals(1500003600000L, TimeSteward.currentTimeMillis());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+
+	public void testDay() throws Exception {
+		// Let the default time zone be checked again
+		Thread.sleep(1100);
+		final ArrayList<Long> minutes = new ArrayList<Long>();
+		final ArrayList<Long> hours = new ArrayList<Long>();
+		Scheduler sched = new Scheduler("virtual");
+		sched.addJob(new Job(Calendar.MINUTE, 1) {
+			public void perform() {
+				minutes.add(TimeSteward.currentTimeMillis());
+			}
+		});
+		sched.addJob(new Job(Calendar.HOUR, 1, Calendar.MINUTE, 30) {
+			public void perform() {
+				hours.add(TimeSteward.currentTimeMillis());
+			}
+		});
+		TimeSteward.sleep(24 * 3600 * 1000 + 1000);
+		sched.dispose();
+		assertEquals(1440, minutes.size());
+		assertEquals(24, hours.size());
+		for (int i = 0; i < minutes.size(); i++)
+			assertEquals(0, minutes.get(i) % 60000);
+		for (int i = 1; i < hours.size(); i++) {
+			assertEquals(3600000, hours.get(i) - hours.get(i - 1));
+		}
+	}
+
+	public void testWaitForCompletion() throws Exception {
+		Scheduler sched = new Scheduler("virtual");
+		Job job = new Job(10 * 60 * 1000) {
+			public void perform() {}
+		};
+		sched.addJob(job);
+		job.waitForCompletion(20 * 60 * 1000);
+		assertEquals(1500000600000L, TimeSteward.currentTimeMillis());
+		sched.dispose();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Worker pool tests
+ *
+ * @author Doug Lau
+ */
+public class WorkerPoolTest extends TestCase {
+
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			return true;
+		}
+	};
+
+	/** Work with a key */
+	static private class KeyWork extends Work {
+		private final Integer key;
+		private final Runnable task;
+		private KeyWork(int k, Runnable t) {
+			key = k;
+			task = t;
+		}
+		protected void perform() {
+			task.run();
+		}
+		public Object getKey() {
+			return key;
+		}
+	}
+
+	protected final WorkerPool pool = new WorkerPool("test", HANDLER, 4);
+
+	public WorkerPoolTest(String name) {
+		super(name);
+	}
+
+	protected void tearDown() {
+		pool.dispose();
+	}
+
+	public void testKeyOrder() throws Exception {
+		final int n_keys = 8;
+		final ArrayList<ArrayList<Integer>> seqs =
+			new ArrayList<ArrayList<Integer>>();
+		final AtomicBoolean[] busy = new AtomicBoolean[n_keys];
+		final AtomicInteger overlaps = new AtomicInteger();
+		for (int k = 0; k < n_keys; k++) {
+			seqs.add(new ArrayList<Integer>());
+			busy[k] = new AtomicBoolean();
+		}
+		Work last = null;
+		for (int i = 0; i < 8000; i++) {
+			final int k = i % n_keys;
+			final int s = i / n_keys;
+			last = new KeyWork(k, new Runnable() {
+				public void run() {
+					if (!busy[k].compareAndSet(false, true))
+						overlaps.incrementAndGet();
+					seqs.get(k).add(s);
+					busy[k].set(false);
+				}
+			});
+			pool.addWork(last);
+		}
+		last.waitForCompletion(30000);
+		for (int k = 0; k < n_keys; k++) {
+			pool.addWork(new KeyWork(k, new Runnable() {
+				public void run() {}
+			})).get(30, TimeUnit.SECONDS);
+		}
+		assertEquals(0, overlaps.get());
+		for (ArrayList<Integer> seq: seqs) {
+			assertEquals(1000, seq.size());
+			for (int s = 0; s < seq.size(); s++)
+				assertEquals(s, seq.get(s).intValue());
+		}
+		assertEquals(0, pool.size());
+	}
+
+	public void testParallelKeys() throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final AtomicInteger passed = new AtomicInteger();
+		Runnable r = new Runnable() {
+			public void run() {
+				try {
+					barrier.await(10, TimeUnit.SECONDS);
+					passed.incrementAndGet();
+				}
+				catch (Exception e) {
+					// timed out
+				}
+			}
+		};
+		Work w0 = new KeyWork(0, r);
+		Work w1 = new KeyWork(1, r);
+		pool.addWork(w0);
+		pool.addWork(w1);
+		w0.waitForCompletion(30000);
+		w1.waitForCompletion(30000);
+		assertEquals(2, passed.get());
+	}
+
+	public void testComplete() throws Exception {
+		final AtomicInteger completed = new AtomicInteger();
+		Work w = new Work() {
+			protected void perform() throws Exception {
+				throw new Exception("fail");
+			}
+			protected void complete() {
+				completed.incrementAndGet();
+			}
+		};
+		pool.addWork(w);
+		w.waitForCompletion(30000);
+		assertEquals(1, completed.get());
+	}
+
+	public void testAddAfterDispose() throws Exception {
+		final AtomicInteger performed = new AtomicInteger();
+		pool.dispose();
+		CompletableFuture<Work> f = pool.addWork(new KeyWork(0,
+			new Runnable() {
+				public void run() {
+					performed.incrementAndGet();
+				}
+			}));
+		assertTrue(f.isCancelled());
+		assertEquals(0, performed.get());
+		assertEquals(0, pool.size());
+	}
+
+	public void testDisposeSheds() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger performed = new AtomicInteger();
+		Work blocker = new KeyWork(0, new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					// disposed
+				}
+			}
+		});
+		pool.addWork(blocker);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		ArrayList<CompletableFuture<Work>> futures =
+			new ArrayList<CompletableFuture<Work>>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(pool.addWork(new KeyWork(0, new Runnable() {
+				public void run() {
+					performed.incrementAndGet();
+				}
+			})));
+		}
+		assertEquals(10, pool.size());
+		pool.dispose();
+		release.countDown();
+		blocker.waitForCompletion(10000);
+		for (CompletableFuture<Work> f: futures)
+			assertTrue(f.isCancelled());
+		assertEquals(0, performed.get());
+		assertEquals(0, pool.size());
+	}
+
+	public void testAddPending() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger performed = new AtomicInteger();
+		pool.addWork(new KeyWork(0, new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					// disposed
+				}
+			}
+		}));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		Work w = new KeyWork(0, new Runnable() {
+			public void run() {
+				performed.incrementAndGet();
+			}
+		});
+		CompletableFuture<Work> f = pool.addWork(w);
+		// Adding pending work again has no effect
+		assertSame(f, pool.addWork(w));
+		assertEquals(1, pool.size());
+		release.countDown();
+		assertSame(w, f.get(10, TimeUnit.SECONDS));
+		assertEquals(1, performed.get());
+		assertEquals(0, pool.size());
+	}
+}
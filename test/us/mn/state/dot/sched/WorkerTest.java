@@ -0,0 +1,398 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2017  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Worker tests
+ *
+ * @author Doug Lau
+ */
+public class WorkerTest extends TestCase {
+
+	static private final ExceptionHandler HANDLER = new ExceptionHandler(){
+		public boolean handle(Exception e) {
+			return true;
+		}
+	};
+
+	protected final Worker worker = new Worker("test", HANDLER);
+
+	static private Work createWork() {
+		return new Work() {
+			protected void perform() {}
+		};
+	}
+
+	/** Add work which blocks the worker until a latch is released */
+	private CountDownLatch blockWorker() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		worker.addWork(new Work() {
+			protected void perform() throws Exception {
+				started.countDown();
+				latch.await();
+			}
+		});
+		started.await();
+		return latch;
+	}
+
+	public WorkerTest(String name) {
+		super(name);
+	}
+
+	public void testWaitForCompletion() {
+		Work work = new Work() {
+			protected void perform() throws Exception {
+				Thread.sleep(50);
+			}
+		};
+		worker.addWork(work);
+		long start = System.currentTimeMillis();
+		try {
+			work.waitForCompletion(30000);
+		}
+		catch (TimeoutException e) {
+			e.printStackTrace();
+			assertTrue(false);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(elapsed < 1000);
+	}
+
+	public void testWaitTimeout() throws Exception {
+		CountDownLatch latch = blockWorker();
+		final Work work = createWork();
+		worker.addWork(work);
+		// Wake up the waiting thread early, many times
+		Thread waker = new Thread() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(20);
+						synchronized (work) {
+							work.notifyAll();
+						}
+					}
+				}
+				catch (InterruptedException e) {
+					// done
+				}
+			}
+		};
+		waker.start();
+		long start = System.currentTimeMillis();
+		try {
+			work.waitForCompletion(500);
+			assertTrue(false);
+		}
+		catch (TimeoutException e) {
+			// expected
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		waker.interrupt();
+		latch.countDown();
+		assertTrue("elapsed: " + elapsed, elapsed >= 490);
+	}
+
+	public void testFuture() throws Exception {
+		final int[] value = new int[1];
+		Work work = new Work() {
+			protected void perform() {
+				value[0] = 42;
+			}
+		};
+		CompletableFuture<Work> f = worker.addWork(work);
+		assertSame(work, f.get(30, TimeUnit.SECONDS));
+		assertEquals(42, value[0]);
+	}
+
+	public void testFutureException() throws Exception {
+		CompletableFuture<Work> f = worker.addWork(new Work() {
+			protected void perform() throws Exception {
+				throw new Exception("failed");
+			}
+		});
+		try {
+			f.get(30, TimeUnit.SECONDS);
+			assertTrue(false);
+		}
+		catch (ExecutionException e) {
+			assertEquals("failed", e.getCause().getMessage());
+		}
+	}
+
+	public void testReject() throws Exception {
+		worker.setCapacity(2, OverflowPolicy.REJECT, 0);
+		CountDownLatch latch = blockWorker();
+		worker.addWork(createWork());
+		worker.addWork(createWork());
+		assertNull(worker.tryAddWork(createWork()));
+		try {
+			worker.addWork(createWork());
+			assertTrue(false);
+		}
+		catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(2, worker.getShedCount());
+		latch.countDown();
+	}
+
+	public void testDropOldest() throws Exception {
+		worker.setCapacity(2, OverflowPolicy.DROP_OLDEST, 0);
+		CountDownLatch latch = blockWorker();
+		CompletableFuture<Work> f0 = worker.addWork(createWork());
+		CompletableFuture<Work> f1 = worker.addWork(createWork());
+		CompletableFuture<Work> f2 = worker.addWork(createWork());
+		// Oldest work is dropped when new work is added
+		assertTrue(f0.isCancelled());
+		assertEquals(2, worker.size());
+		latch.countDown();
+		f2.get(30, TimeUnit.SECONDS);
+		assertFalse(f1.isCancelled());
+		assertEquals(1, worker.getShedCount());
+	}
+
+	public void testDropOldestDrained() throws Exception {
+		Worker w = new Worker("mpsc", HANDLER, new MpscWorkQueue());
+		try {
+			final CountDownLatch started = new CountDownLatch(2);
+			final CountDownLatch l0 = new CountDownLatch(1);
+			final CountDownLatch l1 = new CountDownLatch(1);
+			w.addWork(new Work() {
+				protected void perform() throws Exception {
+					started.countDown();
+					l0.await();
+				}
+			});
+			while (started.getCount() > 1)
+				Thread.sleep(10);
+			// Drained in one batch after the first work
+			w.addWork(new Work() {
+				protected void perform() throws Exception {
+					started.countDown();
+					l1.await();
+				}
+			});
+			CompletableFuture<Work> f0 = w.addWork(createWork());
+			CompletableFuture<Work> f1 = w.addWork(createWork());
+			l0.countDown();
+			started.await();
+			assertEquals(2, w.size());
+			w.setCapacity(2, OverflowPolicy.DROP_OLDEST, 0);
+			CompletableFuture<Work> f2 = w.addWork(createWork());
+			assertTrue(f0.isCancelled());
+			assertEquals(2, w.size());
+			l1.countDown();
+			f2.get(30, TimeUnit.SECONDS);
+			assertFalse(f1.isCancelled());
+			assertEquals(1, w.getShedCount());
+		}
+		finally {
+			w.dispose();
+		}
+	}
+
+	public void testBlockSelf() throws Exception {
+		worker.setCapacity(1, OverflowPolicy.BLOCK, 30000);
+		final AtomicInteger rejected = new AtomicInteger();
+		Work w = new Work() {
+			protected void perform() {
+				worker.addWork(createWork());
+				try {
+					// Would block forever
+					worker.addWork(createWork());
+				}
+				catch (RejectedExecutionException e) {
+					rejected.incrementAndGet();
+				}
+			}
+		};
+		long start = System.currentTimeMillis();
+		worker.addWork(w).get(10, TimeUnit.SECONDS);
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		assertEquals(1, rejected.get());
+		assertEquals(0, worker.getBlockedCount());
+		assertEquals(1, worker.getShedCount());
+	}
+
+	public void testBlock() throws Exception {
+		worker.setCapacity(1, OverflowPolicy.BLOCK, 100);
+		CountDownLatch latch = blockWorker();
+		worker.addWork(createWork());
+		long start = System.currentTimeMillis();
+		try {
+			worker.addWork(createWork());
+			assertTrue(false);
+		}
+		catch (RejectedExecutionException e) {
+			// expected after timeout
+		}
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		worker.setCapacity(1, OverflowPolicy.BLOCK, 30000);
+		final CountDownLatch l = latch;
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e) { }
+				l.countDown();
+			}
+		}.start();
+		worker.addWork(createWork()).get(30, TimeUnit.SECONDS);
+		assertEquals(2, worker.getBlockedCount());
+		assertEquals(1, worker.getShedCount());
+	}
+
+	/** Work to refresh a device, which is coalesced by device name */
+	static private class RefreshWork extends Work {
+		private final String dev;
+		private final AtomicInteger runs;
+		private int merged = 0;
+		private RefreshWork(String d, AtomicInteger r) {
+			dev = d;
+			runs = r;
+		}
+		protected void perform() {
+			runs.incrementAndGet();
+		}
+		public Object getCoalesceKey() {
+			return dev;
+		}
+		protected void coalesce(Work w) {
+			merged++;
+		}
+	}
+
+	public void testCoalesce() throws Exception {
+		worker.setCoalescing(true);
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch latch = blockWorker();
+		RefreshWork first = new RefreshWork("V12", runs);
+		worker.addWork(first);
+		ArrayList<CompletableFuture<RefreshWork>> futures =
+			new ArrayList<CompletableFuture<RefreshWork>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(worker.addWork(new RefreshWork("V12",
+				runs)));
+		}
+		worker.addWork(new RefreshWork("V13", runs));
+		assertEquals(2, worker.size());
+		latch.countDown();
+		for (CompletableFuture<RefreshWork> f: futures)
+			assertNotNull(f.get(30, TimeUnit.SECONDS));
+		first.waitForCompletion(30000);
+		worker.addWork(new RefreshWork("V12", runs)).get(30,
+			TimeUnit.SECONDS);
+		assertEquals(3, runs.get());
+		assertEquals(4, first.merged);
+		assertEquals(4, worker.getCoalescedCount());
+	}
+
+	/** Work with a serialization key */
+	static private class KeyedWork extends Work {
+		private final Integer key;
+		private final int seq;
+		private final AtomicBoolean busy;
+		private final List<Integer> seqs;
+		private final AtomicInteger errors;
+		private final Worker owner;
+		private KeyedWork(Integer k, int s, AtomicBoolean b,
+			List<Integer> sq, AtomicInteger e, Worker w)
+		{
+			key = k;
+			seq = s;
+			busy = b;
+			seqs = sq;
+			errors = e;
+			owner = w;
+		}
+		protected void perform() throws Exception {
+			if (!busy.compareAndSet(false, true))
+				errors.incrementAndGet();
+			String t = Thread.currentThread().getName();
+			if (!t.startsWith("exec"))
+				errors.incrementAndGet();
+			if (!owner.isCurrentThread())
+				errors.incrementAndGet();
+			seqs.add(seq);
+			Thread.sleep(1);
+			busy.set(false);
+		}
+		public Object getKey() {
+			return key;
+		}
+	}
+
+	public void testExecutor() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4,
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "exec");
+				}
+			});
+		worker.setExecutor(pool);
+		final int n_keys = 3;
+		final int n_work = 50;
+		AtomicInteger errors = new AtomicInteger();
+		ArrayList<List<Integer>> seqs = new ArrayList<List<Integer>>();
+		AtomicBoolean[] busy = new AtomicBoolean[n_keys];
+		for (int k = 0; k < n_keys; k++) {
+			seqs.add(Collections.synchronizedList(
+				new ArrayList<Integer>()));
+			busy[k] = new AtomicBoolean();
+		}
+		ArrayList<CompletableFuture<KeyedWork>> futures =
+			new ArrayList<CompletableFuture<KeyedWork>>();
+		for (int i = 0; i < n_keys * n_work; i++) {
+			int k = i % n_keys;
+			futures.add(worker.addWork(new KeyedWork(k, i / n_keys,
+				busy[k], seqs.get(k), errors, worker)));
+		}
+		try {
+			for (CompletableFuture<KeyedWork> f: futures)
+				f.get(30, TimeUnit.SECONDS);
+		}
+		finally {
+			pool.shutdown();
+		}
+		// Work ran on the executor, as the worker, without overlap
+		assertEquals(0, errors.get());
+		assertFalse(worker.isCurrentThread());
+		for (List<Integer> seq: seqs) {
+			assertEquals(n_work, seq.size());
+			for (int s = 0; s < n_work; s++)
+				assertEquals(s, seq.get(s).intValue());
+		}
+	}
+}